@@ -388,6 +388,10 @@ children and RESETWHENCHILDLESS is set (implying it is a
 
 	lastFocusedActivity = this;
 
+	/* The clipboard might have been changed while Emacs was not
+	   focused.  */
+	EmacsClipboard.focusGained ();
+
 	/* Update the window insets as the focus change may have
 	   changed the window insets as well, and the system does not
 	   automatically restore visibility flags.  */
@@ -21,6 +21,10 @@
 
 import java.io.File;
 import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.nio.channels.FileChannel;
 
 import android.content.Context;
 
@@ -76,10 +80,171 @@ public final class EmacsApplication extends Application
       }
   }
 
+  /* Return whether the dump file DUMP predates the installation of
+     Emacs, in which case it must not be used even if the C signature
+     (representing libemacs.so) remains identical.  */
+
+  private static boolean
+  dumpFileOutdated (File dump)
+  {
+    File apk;
+
+    if (apkFileName == null)
+      return false;
+
+    apk = new File (apkFileName);
+    return apk.lastModified () > dump.lastModified ();
+  }
+
+  /* Delete every dump file within DIRECTORY save for the one named
+     WANTEDDUMPFILE.  */
+
+  private static void
+  deleteOtherDumpFiles (File directory, final String wantedDumpFile)
+  {
+    File[] allFiles;
+
+    allFiles = directory.listFiles (new FileFilter () {
+	@Override
+	public boolean
+	accept (File file)
+	{
+	  return (!file.isDirectory ()
+		  && file.getName ().endsWith (".pdmp")
+		  && !file.getName ().equals (wantedDumpFile));
+	}
+      });
+
+    if (allFiles == null)
+      return;
+
+    for (File file : allFiles)
+      file.delete ();
+  }
+
+  /* Locate the dump file for this Emacs binary by its name alone,
+     without listing the files directory.  Outdated dump files are
+     deleted afterwards on a separate thread, so that the directory is
+     not read on the main thread while the application is starting.
+     The time taken by both tasks is recorded by
+     `EmacsStartupTracer'.  */
+
+  public static void
+  findDumpFileQuickly (Context context)
+  {
+    final File filesDirectory;
+    final String wantedDumpFile;
+    File dump;
+    Thread thread;
+    long start;
+
+    start = EmacsStartupTracer.beginTask (EmacsStartupTracer.LOCATE_DUMP);
+    wantedDumpFile = ("emacs-" + EmacsNative.getFingerprint ()
+		      + ".pdmp");
+    filesDirectory = context.getFilesDir ();
+    dump = new File (filesDirectory, wantedDumpFile);
+
+    if (dump.isFile ())
+      {
+	if (dumpFileOutdated (dump))
+	  /* Don't set the dump file name in this case.  */
+	  dump.delete ();
+	else
+	  dumpFileName = dump.getAbsolutePath ();
+      }
+
+    EmacsStartupTracer.endTask (EmacsStartupTracer.LOCATE_DUMP, start);
+
+    thread = new Thread ("Emacs dump file cleanup thread") {
+	@Override
+	public void
+	run ()
+	{
+	  long start;
+
+	  start = EmacsStartupTracer.beginTask (EmacsStartupTracer
+						.DELETE_DUMPS);
+	  deleteOtherDumpFiles (filesDirectory, wantedDumpFile);
+	  EmacsStartupTracer.endTask (EmacsStartupTracer.DELETE_DUMPS,
+				      start);
+	}
+      };
+
+    thread.setPriority (Thread.MIN_PRIORITY);
+    thread.start ();
+  }
+
+  /* Begin reading the dump file into the page cache on a separate
+     thread, so that the I/O required to load it overlaps with the
+     creation of the service and activities that precedes the start
+     of the Emacs thread, rather than following them.
+
+     The dump file is mapped and each of its pages is touched, which
+     `MappedByteBuffer.load' arranges by advising the kernel that the
+     mapping will be required and faulting each page in.  The native
+     code subsequently loads the dump by name as before, but finds its
+     contents resident.  */
+
+  public static void
+  prefetchDumpFile ()
+  {
+    final String fileName;
+    Thread thread;
+
+    fileName = dumpFileName;
+
+    if (fileName == null)
+      return;
+
+    thread = new Thread ("Emacs dump file prefetch thread") {
+	@Override
+	public void
+	run ()
+	{
+	  RandomAccessFile file;
+	  FileChannel channel;
+	  long start;
+
+	  file = null;
+	  start = EmacsStartupTracer.beginTask (EmacsStartupTracer
+						.PREFETCH_DUMP);
+
+	  try
+	    {
+	      file = new RandomAccessFile (fileName, "r");
+	      channel = file.getChannel ();
+	      channel.map (FileChannel.MapMode.READ_ONLY, 0,
+			   channel.size ()).load ();
+	    }
+	  catch (IOException e)
+	    {
+	      Log.w (TAG, "prefetchDumpFile: " + e);
+	    }
+	  finally
+	    {
+	      try
+		{
+		  if (file != null)
+		    file.close ();
+		}
+	      catch (IOException e)
+		{
+
+		}
+
+	      EmacsStartupTracer.endTask (EmacsStartupTracer.PREFETCH_DUMP,
+					  start);
+	    }
+	}
+      };
+
+    thread.start ();
+  }
+
   public static void
   findDumpFile (Context context)
   {
-    File filesDirectory, apk;
+    File filesDirectory;
     File[] allFiles;
     String wantedDumpFile;
     int i;
@@ -112,22 +277,14 @@ public final class EmacsApplication extends Application
 	  {
 	    /* Compare the last modified time of the dumpfile with
 	       that of apkFileName, the time at which Emacs was
-	       installed.  Delete it if the dump file was created
-	       before Emacs was installed, even if the C signature
-	       (representing libemacs.so) remains identical.  */
+	       installed.  */
 
-	    if (apkFileName != null)
+	    if (dumpFileOutdated (allFiles[i]))
 	      {
-		apk = new File (apkFileName);
-
-		if (apk.lastModified ()
-		    > allFiles[i].lastModified ())
-		  {
-		    allFiles[i].delete ();
+		allFiles[i].delete ();
 
-		    /* Don't set the dump file name in this case.  */
-		    continue;
-		  }
+		/* Don't set the dump file name in this case.  */
+		continue;
 	      }
 
 	    dumpFileName = allFiles[i].getAbsolutePath ();
@@ -142,16 +299,26 @@ public final class EmacsApplication extends Application
   public void
   onCreate ()
   {
+    long start;
+
+    EmacsStartupTracer.mark (EmacsStartupTracer.APPLICATION_CREATE);
+
     /* Block signals which don't interest the current thread and its
        descendants created by the system.  The original signal mask
        will be restored for the Emacs thread in `initEmacs'.  */
     EmacsNative.setupSystemThread ();
 
     /* Establish the name of the APK.  */
+    start = EmacsStartupTracer.beginTask (EmacsStartupTracer.LOCATE_APK);
     apkFileName = getApkFile ();
+    EmacsStartupTracer.endTask (EmacsStartupTracer.LOCATE_APK, start);
+
+    /* Locate a suitable dump file.  Outdated dump files are deleted
+       in the background, since the files directory can be large.  */
+    findDumpFileQuickly (this);
 
-    /* Locate a suitable dump file.  */
-    findDumpFile (this);
+    /* And start reading it.  */
+    prefetchDumpFile ();
 
     /* Start the rest of the application.  */
     super.onCreate ();
@@ -35,6 +35,22 @@
   public abstract String[] getClipboardTargets ();
   public abstract AssetFileDescriptor getClipboardData (String target);
 
+  /* Number of times an Emacs activity has gained input focus.  From
+     Android 10 onwards, Emacs is not notified of changes to the
+     clipboard, which can only be changed by other programs while
+     Emacs is not focused, so any clipboard contents cached before
+     this value changes must be discarded.  */
+  protected static volatile int focusCount;
+
+  /* Note that an Emacs activity has gained input focus.  Call only
+     from the UI thread.  */
+
+  public static void
+  focusGained ()
+  {
+    focusCount++;
+  }
+
   /* Create the correct kind of clipboard for this system.  */
 
   public static EmacsClipboard
@@ -219,6 +219,43 @@ private static final class Item implements MenuItem.OnMenuItemClickListener
     return item.subMenu;
   }
 
+  /* Set the state of each item within this menu and its submenus
+     from STATES, starting at INDEX, and return the index of the first
+     element of STATES that was not used.  */
+
+  private int
+  applyState (boolean[] states, int index)
+  {
+    for (Item item : menuItems)
+      {
+	if (item.subMenu != null)
+	  index = item.subMenu.applyState (states, index);
+	else if (item.itemID != 0)
+	  {
+	    item.isEnabled = states[index++];
+	    item.isChecked = states[index++];
+	  }
+      }
+
+    return index;
+  }
+
+  /* Update the state of the items in this menu, which is being
+     displayed again.  STATES holds two elements for each normal item
+     in this menu and its submenus, in the order in which they were
+     added, the first of which indicates whether the item is enabled,
+     and the second whether it is checked.
+
+     Emacs retains menus that have been displayed and reuses them
+     when a menu with the same items is displayed, rather than
+     building a new menu each time.  */
+
+  public void
+  applyState (boolean[] states)
+  {
+    applyState (states, 0);
+  }
+
   /* Add the contents of this menu to MENU.  Assume MENU will be
      displayed in INFLATEDVIEW.  */
 
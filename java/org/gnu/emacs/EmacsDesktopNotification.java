@@ -31,9 +31,18 @@
 import android.net.Uri;
 
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 
 import android.widget.RemoteViews;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 
 
 /* Structure designating a single desktop notification.
@@ -57,6 +66,57 @@
      notified of any notification's being dismissed.  */
   public static final String NOTIFICATION_DISMISSED = "org.gnu.emacs.DISMISSED";
 
+  /* Minimum interval in milliseconds between updates to notifications
+     with the same tag.  */
+  private static final long UPDATE_INTERVAL = 500;
+
+  /* Maximum number of pending intents retained.  */
+  private static final int MAX_PENDING_INTENTS = 128;
+
+  /* State of the notification with a given tag.  */
+
+  private static final class TagState
+  {
+    /* The notification last displayed, and the notification to
+       replace it with, if any.  */
+    EmacsDesktopNotification posted, pending;
+
+    /* The time at which POSTED was displayed.  */
+    long lastPosted;
+
+    /* Whether the display of PENDING has been scheduled.  */
+    boolean scheduled;
+  };
+
+  /* The fields below must only be accessed from the UI thread.  */
+
+  /* Map between tags and the state of their notifications.  Entries
+     are removed once their notifications are dismissed, unless an
+     update is yet to be displayed.  */
+  private static final HashMap<String, TagState> tagStates;
+
+  /* Pending intents created for notifications and their actions,
+     keyed by the type and data of their intents.  */
+  private static final LinkedHashMap<String, PendingIntent> pendingIntents;
+
+  /* Handler for the UI thread.  */
+  private static final Handler handler;
+
+  static
+  {
+    tagStates = new HashMap<String, TagState> ();
+    pendingIntents
+      = new LinkedHashMap<String, PendingIntent> (16, 0.75f, true) {
+	  @Override
+	  protected boolean
+	  removeEldestEntry (Map.Entry<String, PendingIntent> entry)
+	  {
+	    return size () > MAX_PENDING_INTENTS;
+	  }
+	};
+    handler = new Handler (Looper.getMainLooper ());
+  };
+
   /* The content of this desktop notification.  */
   public final String content;
 
@@ -109,6 +169,38 @@
 
   /* Functions for displaying desktop notifications.  */
 
+  /* Return a pending intent that will start INTENT as an activity, or
+     send it as a broadcast if BROADCAST, creating it with CONTEXT if
+     no such intent has already been created.  INTENT must be
+     distinguished from others by its data alone.  */
+
+  private static PendingIntent
+  getPendingIntent (Context context, Intent intent, boolean broadcast)
+  {
+    PendingIntent pending;
+    String key;
+    int flags;
+
+    key = (broadcast ? "broadcast:" : "activity:") + intent.getData ();
+    pending = pendingIntents.get (key);
+
+    if (pending != null)
+      return pending;
+
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S)
+      flags = PendingIntent.FLAG_IMMUTABLE;
+    else
+      flags = 0;
+
+    if (broadcast)
+      pending = PendingIntent.getBroadcast (context, 0, intent, flags);
+    else
+      pending = PendingIntent.getActivity (context, 0, intent, flags);
+
+    pendingIntents.put (key, pending);
+    return pending;
+  }
+
   /* Insert each action in actions and titles into the notification
      builder BUILDER, with pending intents created with CONTEXT holding
      suitable metadata.  */
@@ -147,11 +239,7 @@
 	intent.putExtra (NOTIFICATION_ACTION, actions[i]);
 	intent.putExtra (NOTIFICATION_TAG, tag);
 
-	if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S)
-	  pending = PendingIntent.getActivity (context, 0, intent,
-					       PendingIntent.FLAG_IMMUTABLE);
-	else
-	  pending = PendingIntent.getActivity (context, 0, intent, 0);
+	pending = getPendingIntent (context, intent, false);
 
 	if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M)
 	  {
@@ -186,9 +274,12 @@
       {
 	/* Create the notification channel for this group.  If a group
 	   already exists with the same name, its linked attributes
-	   (such as its importance) will be overridden.  */
-        channel = new NotificationChannel (group, group, importance);
+	   (such as its importance) will be overridden.  This must be
+	   done for each notification displayed, as the user might
+	   have deleted the channel since it was last created.  */
+	channel = new NotificationChannel (group, group, importance);
 	manager.createNotificationChannel (channel);
+
 	builder = new Notification.Builder (context, group);
 
 	/* Create and configure a notification object and display
@@ -267,12 +358,7 @@ else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB)
     intent.putExtra (NOTIFICATION_ACTION, "default");
     intent.putExtra (NOTIFICATION_TAG, tag);
 
-    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S)
-      pending = PendingIntent.getActivity (context, 0, intent,
-					   PendingIntent.FLAG_IMMUTABLE);
-    else
-      pending = PendingIntent.getActivity (context, 0, intent, 0);
-
+    pending = getPendingIntent (context, intent, false);
     notification.contentIntent = pending;
 
     /* Provide a cancellation intent to respond to notification
@@ -287,16 +373,157 @@ else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB)
 		    .build ());
     intent.putExtra (NOTIFICATION_TAG, tag);
 
-    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S)
-      pending = PendingIntent.getBroadcast (context, 0, intent,
-					    PendingIntent.FLAG_IMMUTABLE);
-    else
-      pending = PendingIntent.getBroadcast (context, 0, intent, 0);
-
+    pending = getPendingIntent (context, intent, true);
     notification.deleteIntent = pending;
     manager.notify (tag, 2, notification);
   }
 
+  /* Return whether STRING1 and STRING2 are equal or both NULL.  */
+
+  private static boolean
+  stringsEqual (String string1, String string2)
+  {
+    return (string1 == null
+	    ? string2 == null : string1.equals (string2));
+  }
+
+  /* Return whether displaying this notification in place of OTHER
+     would change nothing.  */
+
+  private boolean
+  sameAs (EmacsDesktopNotification other)
+  {
+    return (other != null
+	    && stringsEqual (title, other.title)
+	    && stringsEqual (content, other.content)
+	    && stringsEqual (group, other.group)
+	    && icon == other.icon
+	    && importance == other.importance
+	    && delay == other.delay
+	    && Arrays.equals (actions, other.actions)
+	    && Arrays.equals (titles, other.titles));
+  }
+
+  /* Display the pending notification with the tag TAG, if any.  */
+
+  private static void
+  flush (String tag)
+  {
+    TagState state;
+    EmacsDesktopNotification notification;
+
+    state = tagStates.get (tag);
+
+    if (state == null)
+      return;
+
+    state.scheduled = false;
+    notification = state.pending;
+
+    if (notification == null)
+      return;
+
+    state.pending = null;
+    notification.display1 (EmacsService.SERVICE);
+    state.posted = notification;
+    state.lastPosted = SystemClock.uptimeMillis ();
+  }
+
+  /* Arrange to display this notification, unless it is identical to
+     the notification already displayed with its tag.  If another
+     notification with the same tag was displayed less than
+     UPDATE_INTERVAL ago, wait until that interval elapses, and
+     display only the last notification to arrive in the meantime.  */
+
+  private void
+  enqueue ()
+  {
+    TagState state;
+    long remaining;
+
+    state = tagStates.get (tag);
+
+    if (state == null)
+      {
+	state = new TagState ();
+	tagStates.put (tag, state);
+      }
+
+    if (sameAs (state.posted))
+      {
+	/* Discard any update that this notification reverts.  */
+	state.pending = null;
+	return;
+      }
+
+    state.pending = this;
+
+    if (state.scheduled)
+      return;
+
+    remaining = (state.lastPosted + UPDATE_INTERVAL
+		 - SystemClock.uptimeMillis ());
+
+    if (remaining <= 0)
+      {
+	flush (tag);
+	return;
+      }
+
+    state.scheduled = true;
+    handler.postDelayed (new Runnable () {
+	@Override
+	public void
+	run ()
+	{
+	  flush (tag);
+	}
+      }, remaining);
+  }
+
+  /* Forget the notification with the tag TAG, which has been
+     dismissed or is about to be, so that it may be displayed again.
+     If DISCARD, also discard any update to the notification that has
+     yet to be displayed; otherwise, that update is displayed as a new
+     notification once it is due.  Call only from the UI thread.  */
+
+  public static void
+  forget (String tag, boolean discard)
+  {
+    TagState state;
+    String data;
+    Iterator<String> iterator;
+    String key;
+
+    state = tagStates.get (tag);
+
+    if (state == null)
+      return;
+
+    state.posted = null;
+
+    if (!discard && state.pending != null)
+      return;
+
+    tagStates.remove (tag);
+
+    /* Remove the pending intents created for the notification and
+       its actions, whose data is DATA or begins with it.  */
+
+    data = new Uri.Builder ().scheme ("action").appendPath (tag)
+      .build ().toString ();
+    iterator = pendingIntents.keySet ().iterator ();
+
+    while (iterator.hasNext ())
+      {
+	key = iterator.next ();
+	key = key.substring (key.indexOf (':') + 1);
+
+	if (key.equals (data) || key.startsWith (data + "/"))
+	  iterator.remove ();
+      }
+  }
+
   /* Display this desktop notification.
 
      Create a notification channel named GROUP or update its
@@ -310,7 +537,7 @@ else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB)
 	public void
 	run ()
 	{
-	  display1 (EmacsService.SERVICE);
+	  enqueue ();
 	}
       });
   }
@@ -338,6 +565,7 @@ public static class CancellationReceiver extends BroadcastReceiver
       if (tag == null)
 	return;
 
+      forget (tag, false);
       EmacsNative.sendNotificationDeleted (tag);
     }
   };
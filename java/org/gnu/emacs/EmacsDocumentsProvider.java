@@ -20,10 +20,13 @@
 package org.gnu.emacs;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 
 import android.database.Cursor;
 import android.database.MatrixCursor;
 
+import android.graphics.Point;
+
 import android.os.Build;
 import android.os.CancellationSignal;
 import android.os.ParcelFileDescriptor;
@@ -43,6 +46,8 @@
 import java.io.FileOutputStream;
 import java.io.IOException;
 
+import java.util.List;
+
 /* ``Documents provider''.  This allows Emacs's home directory to be
    modified by other programs holding permissions to manage system
    storage, which is useful to (for example) correct misconfigurations
@@ -56,6 +61,17 @@ public final class EmacsDocumentsProvider extends DocumentsProvider
      initially returned to requesting applications.  */
   private File baseDir;
 
+  /* Index of the files beneath baseDir, with which search and recent
+     document queries are answered.  */
+  private EmacsFileIndex index;
+
+  /* Maximum number of results returned by a search or recent document
+     query.  */
+  private static final int MAX_RESULTS = 64;
+
+  /* Cache of previews of image files beneath baseDir.  */
+  private EmacsThumbnailCache thumbnails;
+
   /* The default projection for requests for the root directory.  */
   private static final String[] DEFAULT_ROOT_PROJECTION;
 
@@ -91,6 +107,14 @@ public final class EmacsDocumentsProvider extends DocumentsProvider
   {
     /* Set the base directory to Emacs's files directory.  */
     baseDir = getContext ().getFilesDir ();
+
+    /* Begin indexing its contents.  */
+    index = new EmacsFileIndex (baseDir);
+    index.start ();
+
+    thumbnails
+      = new EmacsThumbnailCache (new File (getContext ().getCacheDir (),
+					   "thumbnails"));
     return true;
   }
 
@@ -118,7 +142,9 @@ public final class EmacsDocumentsProvider extends DocumentsProvider
     /* Add the appropriate flags.  */
 
     row.add (Root.COLUMN_FLAGS, (Root.FLAG_SUPPORTS_CREATE
-				 | Root.FLAG_SUPPORTS_IS_CHILD));
+				 | Root.FLAG_SUPPORTS_IS_CHILD
+				 | Root.FLAG_SUPPORTS_SEARCH
+				 | Root.FLAG_SUPPORTS_RECENTS));
     row.add (Root.COLUMN_ICON, R.drawable.emacs);
     row.add (Root.FLAG_LOCAL_ONLY);
     row.add (Root.COLUMN_TITLE, "Emacs");
@@ -200,6 +226,17 @@ public final class EmacsDocumentsProvider extends DocumentsProvider
     return "application/octet-stream";
   }
 
+  /* Return whether a preview of a file of the MIME type MIMETYPE can
+     be generated.  */
+
+  private static boolean
+  canPreview (String mimeType)
+  {
+    /* BitmapFactory cannot decode vector images.  */
+    return (mimeType.startsWith ("image/")
+	    && !mimeType.equals ("image/svg+xml"));
+  }
+
   /* Append the specified FILE to the query result RESULT.
      Handle both directories and ordinary files.  */
 
@@ -252,6 +289,9 @@ else if (file.canWrite ())
     displayName = file.getName ();
     mimeType = getMimeType (file);
 
+    if (canPreview (mimeType))
+      flags |= Document.FLAG_SUPPORTS_THUMBNAIL;
+
     row.add (Document.COLUMN_DOCUMENT_ID, fileName);
     row.add (Document.COLUMN_DISPLAY_NAME, displayName);
     row.add (Document.COLUMN_SIZE, file.length ());
@@ -323,13 +363,109 @@ else if (file.canWrite ())
     return result;
   }
 
+  /* Append each file in NAMES to a new cursor with the columns
+     PROJECTION, or DEFAULT_DOCUMENT_PROJECTION if it is NULL.  Omit
+     files that no longer exist.  */
+
+  private Cursor
+  queryDocuments (List<String> names, String[] projection)
+  {
+    MatrixCursor result;
+    File file;
+
+    if (projection == null)
+      projection = DEFAULT_DOCUMENT_PROJECTION;
+
+    result = new MatrixCursor (projection);
+
+    for (String name : names)
+      {
+	file = new File (name);
+
+	if (file.exists ())
+	  queryDocument1 (result, file);
+      }
+
+    return result;
+  }
+
+  @Override
+  public Cursor
+  querySearchDocuments (String rootId, String query,
+			String[] projection)
+    throws FileNotFoundException
+  {
+    return queryDocuments (index.search (query, MAX_RESULTS),
+			   projection);
+  }
+
+  @Override
+  public Cursor
+  queryRecentDocuments (String rootId, String[] projection)
+    throws FileNotFoundException
+  {
+    return queryDocuments (index.recent (MAX_RESULTS), projection);
+  }
+
   @Override
   public ParcelFileDescriptor
   openDocument (String documentId, String mode,
 		CancellationSignal signal) throws FileNotFoundException
   {
-    return ParcelFileDescriptor.open (new File (documentId),
-				      ParcelFileDescriptor.parseMode (mode));
+    final File file;
+    int modeBits;
+    ParcelFileDescriptor.OnCloseListener listener;
+
+    file = new File (documentId);
+    modeBits = ParcelFileDescriptor.parseMode (mode);
+
+    if ((modeBits & ParcelFileDescriptor.MODE_WRITE_ONLY) == 0)
+      return ParcelFileDescriptor.open (file, modeBits);
+
+    /* The file might be created or modified through this descriptor,
+       so update the index once it is closed.  */
+
+    listener = new ParcelFileDescriptor.OnCloseListener () {
+	@Override
+	public void
+	onClose (IOException e)
+	{
+	  index.fileAdded (file);
+	}
+      };
+
+    try
+      {
+	return ParcelFileDescriptor.open (file, modeBits,
+					  index.getHandler (),
+					  listener);
+      }
+    catch (IOException e)
+      {
+	throw new FileNotFoundException (e.toString ());
+      }
+  }
+
+  @Override
+  public AssetFileDescriptor
+  openDocumentThumbnail (String documentId, Point sizeHint,
+			 CancellationSignal signal)
+    throws FileNotFoundException
+  {
+    File file, thumbnail;
+    ParcelFileDescriptor fd;
+
+    file = new File (documentId);
+
+    if (!canPreview (getMimeType (file)))
+      throw new FileNotFoundException ("not an image file");
+
+    thumbnail = thumbnails.getThumbnail (file, sizeHint.x, sizeHint.y,
+					 signal);
+    fd = ParcelFileDescriptor.open (thumbnail,
+				    ParcelFileDescriptor.MODE_READ_ONLY);
+    return new AssetFileDescriptor (fd, 0,
+				    AssetFileDescriptor.UNKNOWN_LENGTH);
   }
 
   @Override
@@ -376,6 +512,7 @@ else if (file.canWrite ())
     if (parentFile != null)
       notifyChange (parentFile);
 
+    index.fileAdded (file);
     return file.getAbsolutePath ();
   }
 
@@ -426,6 +563,7 @@ else if (file.canWrite ())
       {
 	/* Tell the system about the change.  */
 	notifyChange (parent);
+	index.fileRemoved (file.getAbsolutePath ());
 	return;
       }
 
@@ -440,6 +578,10 @@ else if (file.canWrite ())
     if (file.delete ())
       /* Tell the system about the change.  */
       notifyChange (parent);
+
+    /* Some of its children might have been deleted even if FILE
+       itself could not be.  */
+    index.fileRemoved (file.getAbsolutePath ());
   }
 
   @Override
@@ -478,6 +620,7 @@ else if (file.canWrite ())
       return null;
 
     notifyChange (parent);
+    index.fileRenamed (file.getAbsolutePath (), newName);
     return newName.getAbsolutePath ();
   }
 
@@ -514,6 +657,7 @@ else if (file.canWrite ())
       {
 	notifyChangeByName (file.getParent ());
 	notifyChangeByName (targetParentDocumentId);
+	index.fileRenamed (file.getAbsolutePath (), newName);
 	return newName.getAbsolutePath ();
       }
 
@@ -572,6 +716,7 @@ else if (file.canWrite ())
     file.delete ();
     notifyChangeByName (file.getParent ());
     notifyChangeByName (targetParentDocumentId);
+    index.fileRenamed (file.getAbsolutePath (), newName);
 
     return newName.getAbsolutePath ();
   }
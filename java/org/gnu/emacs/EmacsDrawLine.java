@@ -143,18 +143,13 @@ else if (dy == 0f)
     if (canvas == null)
       return;
 
-    if (gc.clip_mask == null)
-      {
-	if (gc.line_style != EmacsGC.GC_LINE_ON_OFF_DASH)
-	  canvas.drawLine ((float) x, (float) y, (float) x2, (float) y2,
-			   paint);
-	else
-	  polyDashPattern (gc, canvas, paint, (float) x, (float) y,
-			   (float) x2, (float) y2);
-      }
+    if (gc.line_style != EmacsGC.GC_LINE_ON_OFF_DASH)
+      canvas.drawLine ((float) x, (float) y, (float) x2, (float) y2,
+		       paint);
+    else
+      polyDashPattern (gc, canvas, paint, (float) x, (float) y,
+		       (float) x2, (float) y2);
 
-    /* DrawLine with clip mask not implemented; it is not used by
-       Emacs.  */
     drawable.damageRect (x0, y0, x1, y1);
   }
 }
@@ -0,0 +1,162 @@
+/* Communication module for Android terminals.  -*- c-file-style: "GNU" -*-
+
+Copyright (C) 2024 Free Software Foundation, Inc.
+
+This file is part of GNU Emacs.
+
+GNU Emacs is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or (at
+your option) any later version.
+
+GNU Emacs is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with GNU Emacs.  If not, see <https://www.gnu.org/licenses/>.  */
+
+package org.gnu.emacs;
+
+/* Table of the strings delivered by recent key events, which are too
+   long to be sent with the events themselves, and are looked up by
+   Emacs by the serials of those events.
+
+   The table is a ring of SIZE entries, each of which holds an event
+   serial and a string.  It is filled from the UI thread and read from
+   the Emacs thread without locking or waiting: each modification
+   produces a new immutable copy of the ring, which is published
+   through a volatile field, so that readers always observe a
+   consistent state.  Entries are never removed, but are overwritten
+   after SIZE more strings are saved.
+
+   As the serial of an event is only known once it has been sent, a
+   string is saved as the pending string before the event is sent, and
+   associated with its serial afterwards.  Emacs only looks up the
+   strings of events that have been saved, and only one string is
+   saved at a time, so the pending string is the string of any event
+   that is not present in the ring, but was sent after the last string
+   to be associated with its serial.  */
+
+public final class EmacsEventStrings
+{
+  /* Number of entries in the ring.  */
+  private static final int SIZE = 16;
+
+  /* Immutable state of the table.  */
+
+  private static final class State
+  {
+    /* Serial of the event associated with each entry, or -1 if the
+       entry is empty.  */
+    final int[] serials;
+
+    /* String associated with each entry.  */
+    final String[] strings;
+
+    /* String whose event is being sent, or NULL.  */
+    final String pending;
+
+    /* Serial of the event last associated with an entry, which
+       precedes the event of PENDING.  */
+    final int lastSerial;
+
+    public
+    State (int[] serials, String[] strings, String pending,
+	   int lastSerial)
+    {
+      this.serials = serials;
+      this.strings = strings;
+      this.pending = pending;
+      this.lastSerial = lastSerial;
+    }
+  };
+
+  /* The current state of the table.  */
+  private volatile State state;
+
+  /* Index of the entry to be replaced next.  Only accessed from the
+     UI thread.  */
+  private int next;
+
+  public
+  EmacsEventStrings ()
+  {
+    int[] serials;
+    int i;
+
+    serials = new int[SIZE];
+
+    for (i = 0; i < SIZE; ++i)
+      serials[i] = -1;
+
+    state = new State (serials, new String[SIZE], null, 0);
+  }
+
+  /* Begin saving STRING, which is to be associated with the serial of
+     an event about to be sent.  Value is the index of the entry it
+     will be placed in, which must be passed to `endSave' with the
+     serial once the event is sent.  Call only from the UI thread.  */
+
+  public int
+  beginSave (String string)
+  {
+    State old;
+    int index;
+
+    index = next;
+    next = (next + 1) % SIZE;
+
+    old = state;
+    state = new State (old.serials, old.strings, string,
+		       old.lastSerial);
+    return index;
+  }
+
+  /* Associate the string being saved with SERIAL, and place it in the
+     entry at INDEX.  Call only from the UI thread.  */
+
+  public void
+  endSave (int index, int serial)
+  {
+    State old;
+    int[] serials;
+    String[] strings;
+
+    old = state;
+    serials = old.serials.clone ();
+    strings = old.strings.clone ();
+    serials[index] = serial;
+    strings[index] = old.pending;
+    state = new State (serials, strings, null, serial);
+  }
+
+  /* Return the string associated with the event SERIAL, or NULL if
+     there is none or it has been overwritten.  */
+
+  public String
+  lookup (int serial)
+  {
+    State current;
+    int i;
+
+    current = state;
+
+    for (i = 0; i < SIZE; ++i)
+      {
+	if (current.serials[i] == serial)
+	  return current.strings[i];
+      }
+
+    /* If SERIAL follows the event last associated with an entry, the
+       string being saved belongs to it.  Otherwise, its string has
+       been overwritten.  Serials wrap around, so compare their
+       difference.  */
+
+    if (current.pending != null && serial - current.lastSerial > 0)
+      return current.pending;
+
+    return null;
+  }
+};
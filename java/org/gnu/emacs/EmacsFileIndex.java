@@ -0,0 +1,447 @@
+/* Communication module for Android terminals.  -*- c-file-style: "GNU" -*-
+
+Copyright (C) 2024 Free Software Foundation, Inc.
+
+This file is part of GNU Emacs.
+
+GNU Emacs is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or (at
+your option) any later version.
+
+GNU Emacs is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with GNU Emacs.  If not, see <https://www.gnu.org/licenses/>.  */
+
+package org.gnu.emacs;
+
+import java.io.File;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+
+/* Index of the names of files within a directory tree, maintained
+   for the benefit of the documents provider.
+
+   The system file picker issues search and recent document queries
+   against the provider's roots, and answering these by walking
+   Emacs's home directory would entail hundreds or thousands of stat
+   calls per keystroke.  Instead, the tree is walked once on a thread
+   of its own, and the provider subsequently informs the index of
+   files it creates, renames, moves or deletes, so that queries can be
+   answered from memory.
+
+   Files modified by Emacs itself are not reported to the index, which
+   is why the tree is also walked anew if a query arrives more than
+   REINDEX_TIME seconds after the previous walk.  The query that
+   provokes such a walk is answered from the existing index.  */
+
+public final class EmacsFileIndex extends HandlerThread
+{
+  /* Number of seconds after which the index is considered stale.  */
+  public static final int REINDEX_TIME = 60;
+
+  /* Maximum number of directory levels that will be descended into.
+     This also serves to terminate the walk in the presence of
+     symlink loops.  */
+  private static final int MAX_DEPTH = 24;
+
+  /* Maximum number of files that will be indexed.  */
+  private static final int MAX_ENTRIES = 200000;
+
+  /* Number of files to read before publishing those read during the
+     first walk of the tree.  */
+  private static final int PUBLISH_INTERVAL = 256;
+
+  private static final class Entry
+  {
+    /* The absolute name of this file.  */
+    final String name;
+
+    /* Its display name, converted to lower case.  */
+    final String key;
+
+    /* Its modification time.  */
+    final long mtime;
+
+    /* Whether or not it is a directory.  */
+    final boolean isDirectory;
+
+    public
+    Entry (File file)
+    {
+      name = file.getAbsolutePath ();
+      key = file.getName ().toLowerCase (Locale.ROOT);
+      mtime = file.lastModified ();
+      isDirectory = file.isDirectory ();
+    }
+  };
+
+  /* The directory being indexed.  */
+  private final File baseDir;
+
+  /* Map between absolute file names and index entries.  Access must
+     be synchronized on the map itself.  */
+  private final HashMap<String, Entry> entries;
+
+  /* Handler for this thread's main loop.  */
+  private Handler handler;
+
+  /* The time at which the last walk of the tree was started, or 0 if
+     none has been, and whether another is pending.  These fields are
+     also protected by `entries'.  */
+  private long lastScan;
+  private boolean scanPending;
+
+  public
+  EmacsFileIndex (File baseDir)
+  {
+    super ("Documents provider index thread");
+    this.baseDir = baseDir;
+    this.entries = new HashMap<String, Entry> ();
+  }
+
+
+
+  @Override
+  public void
+  start ()
+  {
+    super.start ();
+
+    /* Set up the handler after the thread starts.  */
+    handler = new Handler (getLooper ());
+
+    /* And start building the index.  */
+    postScan ();
+  }
+
+  /* Return the handler serving this thread.  */
+
+  public Handler
+  getHandler ()
+  {
+    return handler;
+  }
+
+  /* Arrange for the tree to be walked on this thread, unless a walk
+     is already pending.  */
+
+  private void
+  postScan ()
+  {
+    synchronized (entries)
+      {
+	if (scanPending)
+	  return;
+
+	scanPending = true;
+      }
+
+    handler.post (new Runnable () {
+	@Override
+	public void
+	run ()
+	{
+	  scan ();
+	}
+      });
+  }
+
+  /* Walk the tree beneath baseDir, replacing the contents of the
+     index with the files encountered.  The index is published
+     incrementally if it is presently empty, so that queries issued
+     while the first walk is in progress are answered with the files
+     read up to that point.  */
+
+  private void
+  scan ()
+  {
+    HashMap<String, Entry> fresh;
+    ArrayDeque<File> directories;
+    ArrayDeque<Integer> depths;
+    ArrayList<Entry> pending;
+    File directory;
+    File[] children;
+    Entry entry;
+    int depth;
+    boolean incremental;
+    long start;
+
+    start = SystemClock.uptimeMillis ();
+
+    synchronized (entries)
+      {
+	lastScan = start;
+	incremental = entries.isEmpty ();
+      }
+
+    fresh = new HashMap<String, Entry> ();
+    directories = new ArrayDeque<File> ();
+    depths = new ArrayDeque<Integer> ();
+    pending = new ArrayList<Entry> ();
+    directories.add (baseDir);
+    depths.add (0);
+
+    while (!directories.isEmpty () && fresh.size () < MAX_ENTRIES)
+      {
+	directory = directories.poll ();
+	depth = depths.poll ();
+	children = directory.listFiles ();
+
+	if (children == null)
+	  continue;
+
+	for (File child : children)
+	  {
+	    entry = new Entry (child);
+	    fresh.put (entry.name, entry);
+
+	    if (incremental)
+	      pending.add (entry);
+
+	    if (entry.isDirectory && depth + 1 < MAX_DEPTH)
+	      {
+		directories.add (child);
+		depths.add (depth + 1);
+	      }
+	  }
+
+	if (pending.size () >= PUBLISH_INTERVAL)
+	  {
+	    synchronized (entries)
+	      {
+		for (Entry tem : pending)
+		  entries.put (tem.name, tem);
+	      }
+
+	    pending.clear ();
+	  }
+      }
+
+    synchronized (entries)
+      {
+	entries.clear ();
+	entries.putAll (fresh);
+	scanPending = false;
+      }
+  }
+
+  /* Walk the index again if it was last refreshed more than
+     REINDEX_TIME seconds ago.  */
+
+  private void
+  maybeRescan ()
+  {
+    synchronized (entries)
+      {
+	if (scanPending
+	    || (SystemClock.uptimeMillis () - lastScan
+		< REINDEX_TIME * 1000))
+	  return;
+      }
+
+    postScan ();
+  }
+
+
+
+  /* Index modification functions.  These are called from the
+     provider's binder threads, and arrange for the index to be
+     updated on this thread, so that they are ordered with respect to
+     any walk of the tree in progress.  */
+
+  /* Add FILE to the index, or refresh its entry if already present.
+     If FILE is a directory, add its contents as well.  */
+
+  public void
+  fileAdded (final File file)
+  {
+    handler.post (new Runnable () {
+	@Override
+	public void
+	run ()
+	{
+	  addFile (file, 0);
+	}
+      });
+  }
+
+  /* Remove the file named NAME and any files beneath it from the
+     index.  */
+
+  public void
+  fileRemoved (final String name)
+  {
+    handler.post (new Runnable () {
+	@Override
+	public void
+	run ()
+	{
+	  removeFile (name);
+	}
+      });
+  }
+
+  /* Replace the file named OLDNAME by NEWFILE within the index.  */
+
+  public void
+  fileRenamed (final String oldName, final File newFile)
+  {
+    handler.post (new Runnable () {
+	@Override
+	public void
+	run ()
+	{
+	  removeFile (oldName);
+	  addFile (newFile, 0);
+	}
+      });
+  }
+
+  private void
+  addFile (File file, int depth)
+  {
+    Entry entry;
+    File[] children;
+
+    if (!file.exists ())
+      return;
+
+    entry = new Entry (file);
+
+    synchronized (entries)
+      {
+	entries.put (entry.name, entry);
+      }
+
+    if (!entry.isDirectory || depth + 1 >= MAX_DEPTH)
+      return;
+
+    children = file.listFiles ();
+
+    if (children == null)
+      return;
+
+    for (File child : children)
+      addFile (child, depth + 1);
+  }
+
+  private void
+  removeFile (String name)
+  {
+    Iterator<String> iter;
+    String prefix;
+
+    prefix = name + "/";
+
+    synchronized (entries)
+      {
+	entries.remove (name);
+	iter = entries.keySet ().iterator ();
+
+	while (iter.hasNext ())
+	  {
+	    if (iter.next ().startsWith (prefix))
+	      iter.remove ();
+	  }
+      }
+  }
+
+
+
+  /* Index query functions.  */
+
+  /* Return the names of up to LIMIT files whose display names contain
+     QUERY, disregarding case.  */
+
+  public List<String>
+  search (String query, int limit)
+  {
+    ArrayList<String> results;
+    String key;
+
+    key = query.toLowerCase (Locale.ROOT);
+    results = new ArrayList<String> ();
+
+    synchronized (entries)
+      {
+	for (Entry entry : entries.values ())
+	  {
+	    if (results.size () >= limit)
+	      break;
+
+	    if (entry.key.contains (key))
+	      results.add (entry.name);
+	  }
+      }
+
+    maybeRescan ();
+    return results;
+  }
+
+  /* Return the names of up to LIMIT files that were most recently
+     modified, most recent first.  Directories are excluded.  */
+
+  public List<String>
+  recent (int limit)
+  {
+    PriorityQueue<Entry> queue;
+    ArrayList<Entry> sorted;
+    ArrayList<String> results;
+    Comparator<Entry> comparator;
+
+    comparator = new Comparator<Entry> () {
+	@Override
+	public int
+	compare (Entry a, Entry b)
+	{
+	  return Long.compare (a.mtime, b.mtime);
+	}
+      };
+
+    /* Retain the LIMIT most recent entries in a queue ordered by
+       ascending modification time, so that the least recent of them
+       is always the next to be displaced.  */
+    queue = new PriorityQueue<Entry> (limit + 1, comparator);
+
+    synchronized (entries)
+      {
+	for (Entry entry : entries.values ())
+	  {
+	    if (entry.isDirectory)
+	      continue;
+
+	    queue.add (entry);
+
+	    if (queue.size () > limit)
+	      queue.poll ();
+	  }
+      }
+
+    sorted = new ArrayList<Entry> (queue);
+    Collections.sort (sorted, Collections.reverseOrder (comparator));
+    results = new ArrayList<String> (sorted.size ());
+
+    for (Entry entry : sorted)
+      results.add (entry.name);
+
+    maybeRescan ();
+    return results;
+  }
+};
@@ -69,12 +69,7 @@
 
     paint.setStyle (Paint.Style.FILL);
 
-    if (gc.clip_mask == null)
-      canvas.drawPath (path, paint);
-
+    canvas.drawPath (path, paint);
     drawable.damageRect (rect);
-
-    /* FillPolygon with clip mask not implemented; it is not used by
-       Emacs.  */
   }
 }
@@ -20,12 +20,17 @@
 package org.gnu.emacs;
 
 import android.graphics.Bitmap;
+import android.graphics.BlendMode;
 import android.graphics.Canvas;
 import android.graphics.ColorFilter;
 import android.graphics.ColorMatrixColorFilter;
 import android.graphics.Paint;
+import android.graphics.PorterDuff.Mode;
+import android.graphics.PorterDuffXfermode;
 import android.graphics.Rect;
 
+import android.os.Build;
+
 import android.util.Log;
 
 public final class EmacsFillRectangle
@@ -33,6 +38,23 @@
   /* Color filter that inverts colors from the source.  */
   private static final ColorFilter invertFilter;
 
+  /* Paint that inverts the destination when white is drawn with it,
+     on Android 10 and later.  */
+  private static final Paint invertPaint;
+
+  /* Paint that copies the destination into the scratch bitmap, and
+     that with which the scratch bitmap is copied back, inverted.  */
+  private static final Paint copyPaint, invertCopyPaint;
+
+  /* Maximum number of bytes occupied by the scratch bitmap.  */
+  private static final int MAX_SCRATCH_BYTES = 4 * 1024 * 1024;
+
+  /* Bitmap into which the destination is copied before being
+     inverted on Android 9 and earlier, and a canvas drawing to it.
+     Only accessed from the Emacs thread.  */
+  private static Bitmap scratchBitmap;
+  private static Canvas scratchCanvas;
+
   static
   {
     invertFilter = new ColorMatrixColorFilter (new float[] {
@@ -41,8 +63,96 @@
 	0f, 0f, -1f, 0f, 255f,
 	0f, 0f, 0f, 1f, 0f,
       });
+
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q)
+      {
+	/* The difference between white and any opaque color is its
+	   inverse.  */
+	invertPaint = new Paint ();
+	invertPaint.setAntiAlias (false);
+	invertPaint.setStyle (Paint.Style.FILL);
+	invertPaint.setColor (0xffffffff);
+	invertPaint.setBlendMode (BlendMode.DIFFERENCE);
+	copyPaint = null;
+	invertCopyPaint = null;
+      }
+    else
+      {
+	invertPaint = null;
+	copyPaint = new Paint ();
+	copyPaint.setXfermode (new PorterDuffXfermode (Mode.SRC));
+	invertCopyPaint = new Paint ();
+	invertCopyPaint.setColorFilter (invertFilter);
+      }
   };
 
+  /* Invert the contents of RECT within DRAWABLE, whose canvas is
+     CANVAS, by way of a copy, on Android 9 and earlier.  Android
+     doesn't permit copying a bitmap to itself, so the contents are
+     first copied into a scratch bitmap, which is retained for the
+     next inversion unless it would be too large.  */
+
+  private static void
+  invertWithCopy (EmacsDrawable drawable, Canvas canvas, Rect rect)
+  {
+    Bitmap bitmap;
+    Canvas copyCanvas;
+    Rect source;
+    int width, height;
+
+    width = rect.width ();
+    height = rect.height ();
+
+    if (width <= 0 || height <= 0)
+      return;
+
+    if (scratchBitmap != null
+	&& scratchBitmap.getWidth () >= width
+	&& scratchBitmap.getHeight () >= height)
+      {
+	bitmap = scratchBitmap;
+	copyCanvas = scratchCanvas;
+      }
+    else
+      {
+	/* Enlarge the scratch bitmap to accommodate RECT, unless it
+	   would grow too large to be worth retaining, in which case a
+	   bitmap is allocated for this inversion alone.  */
+
+	if (scratchBitmap != null)
+	  {
+	    width = Math.max (width, scratchBitmap.getWidth ());
+	    height = Math.max (height, scratchBitmap.getHeight ());
+	  }
+
+	if ((long) width * height * 4 > MAX_SCRATCH_BYTES)
+	  {
+	    bitmap = Bitmap.createBitmap (rect.width (), rect.height (),
+					  Bitmap.Config.ARGB_8888);
+	    copyCanvas = new Canvas (bitmap);
+	  }
+	else
+	  {
+	    if (scratchBitmap != null)
+	      scratchBitmap.recycle ();
+
+	    bitmap = Bitmap.createBitmap (width, height,
+					  Bitmap.Config.ARGB_8888);
+	    copyCanvas = new Canvas (bitmap);
+	    scratchBitmap = bitmap;
+	    scratchCanvas = copyCanvas;
+	  }
+      }
+
+    source = new Rect (0, 0, rect.width (), rect.height ());
+    copyCanvas.drawBitmap (drawable.getBitmap (), rect, source,
+			   copyPaint);
+    canvas.drawBitmap (bitmap, source, rect, invertCopyPaint);
+
+    if (bitmap != scratchBitmap)
+      bitmap.recycle ();
+  }
+
   public static void
   perform (EmacsDrawable drawable, EmacsGC gc,
 	   int x, int y, int width, int height)
@@ -50,13 +160,10 @@
     Paint paint;
     Rect rect;
     Canvas canvas;
-    Bitmap invertBitmap;
 
     canvas = drawable.lockCanvas (gc);
 
-    /* Clip masks are not respected or implemented when specified with
-       this request.  */
-    if (canvas == null || gc.clip_mask != null)
+    if (canvas == null)
       return;
 
     rect = new Rect (x, y, x + width, y + height);
@@ -73,17 +180,13 @@
       }
     else
       {
-	paint = new Paint ();
-
 	/* Simply invert the destination, which is only implemented for
-	   this request.  As Android doesn't permit copying a bitmap to
-	   itself, a copy of the source must be procured beforehand.  */
-	invertBitmap = Bitmap.createBitmap (drawable.getBitmap (),
-					    x, y, width, height);
-        paint.setColorFilter (invertFilter);
-	canvas.drawBitmap (invertBitmap, null, rect, paint);
-        paint.setColorFilter (null);
-	invertBitmap.recycle ();
+	   this request.  */
+
+	if (invertPaint != null)
+	  canvas.drawRect (rect, invertPaint);
+	else
+	  invertWithCopy (drawable, canvas, rect);
       }
 
     drawable.damageRect (rect);
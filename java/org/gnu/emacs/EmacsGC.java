@@ -19,14 +19,21 @@
 
 package org.gnu.emacs;
 
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import android.graphics.Rect;
 import android.graphics.Paint;
 
 import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
 import android.graphics.Canvas;
-import android.graphics.ColorFilter;
+import android.graphics.Matrix;
+import android.graphics.Path;
 import android.graphics.PorterDuff.Mode;
 import android.graphics.PorterDuffColorFilter;
+import android.graphics.Region;
 import android.graphics.Shader.TileMode;
 
 import android.os.Build;
@@ -55,17 +62,101 @@ public final class EmacsGC extends EmacsHandleObject
   public EmacsPixmap clip_mask, stipple;
   public Paint gcPaint;
 
-  /* Drawable object for rendering the stipple bitmap.  */
-  public EmacsTileObject tileObject;
-
-  /* ID incremented every time the clipping rectangles of any GC
-     changes.  */
+  /* Copy of the stipple bitmap in which set pixels are painted in the
+     foreground color and clear pixels in the background color, or
+     NULL if none has been created.  */
+  private Bitmap stippleTile;
+
+  /* The stipple bitmap, its generation ID, and the foreground and
+     background colors from which stippleTile was produced.  */
+  private Bitmap stippleSource;
+  private int stippleGeneration, stippleForeground, stippleBackground;
+
+  /* Shader repeating stippleTile, paint with which it is drawn, and
+     matrix positioning the tile at the stipple origin.  */
+  private BitmapShader stippleShader;
+  private Paint stipplePaint;
+  private Matrix stippleMatrix;
+
+  /* Stipple origin last applied to stippleMatrix.  */
+  private int stippleOriginX, stippleOriginY;
+
+  /* Outline of the set pixels of the clip mask, offset by the clip
+     origin, or NULL if it has not been computed.  */
+  private Path clipMaskPath;
+
+  /* The clip mask bitmap and its generation ID from which
+     clipMaskPath was computed, and the clip origin by which it is
+     offset.  */
+  private Bitmap clipMaskSource;
+  private int clipMaskGeneration, clipMaskX, clipMaskY;
+
+  /* Maximum number of sets of clip rectangles whose IDs are
+     remembered.  */
+  private static final int MAX_CLIP_IDS = 256;
+
+  /* ID incremented every time a set of clip rectangles that is not
+     present in clipIDs is assigned an ID.  */
   private static long clip_serial;
 
-  /* The value of clipRectID after the last time this GCs clip
-     rectangles changed.  0 if there are no clip rectangles.  */
+  /* Map between sets of clip rectangles and their IDs.  Redisplay
+     switches between GCs with identical clip rectangles constantly;
+     giving identical sets the same ID spares drawables from clipping
+     their canvases anew each time it does so.  */
+  private static final LinkedHashMap<ClipRects, Long> clipIDs;
+
+  /* ID identifying the set of clip rectangles in real_clip_rects,
+     along with the clip mask.  Two GCs with the same clip rectangles
+     and no clip mask generally share the same ID.  0 if there are no
+     clip rectangles or clip mask.  */
   public long clipRectID;
 
+  /* Key identifying a set of clip rectangles by its contents.  The
+     rectangles must not be modified once the key is created.  */
+
+  private static final class ClipRects
+  {
+    /* The rectangles.  */
+    private final Rect[] rects;
+
+    /* Their hash code.  */
+    private final int hashCode;
+
+    public
+    ClipRects (Rect[] rects)
+    {
+      this.rects = rects;
+      this.hashCode = Arrays.hashCode (rects);
+    }
+
+    @Override
+    public int
+    hashCode ()
+    {
+      return hashCode;
+    }
+
+    @Override
+    public boolean
+    equals (Object other)
+    {
+      return (other instanceof ClipRects
+	      && Arrays.equals (rects, ((ClipRects) other).rects));
+    }
+  };
+
+  static
+  {
+    clipIDs = new LinkedHashMap<ClipRects, Long> (16, 0.75f, true) {
+	@Override
+	protected boolean
+	removeEldestEntry (Map.Entry<ClipRects, Long> entry)
+	{
+	  return size () > MAX_CLIP_IDS;
+	}
+      };
+  };
+
   /* The following fields are only set on immutable GCs.  */
 
   public
@@ -88,6 +179,41 @@ public final class EmacsGC extends EmacsHandleObject
     gcPaint.setAntiAlias (false);
   }
 
+  /* Return the ID of the set of clip rectangles RECTS, which must not
+     be modified afterwards.  Value is 0 if RECTS is NULL, and the same
+     ID as was last returned for an identical set of rectangles if one
+     is still remembered.  */
+
+  private static synchronized long
+  internClipRects (Rect[] rects)
+  {
+    ClipRects key;
+    Long id;
+
+    if (rects == null)
+      return 0;
+
+    key = new ClipRects (rects);
+    id = clipIDs.get (key);
+
+    if (id == null)
+      {
+	id = ++clip_serial;
+	clipIDs.put (key, id);
+      }
+
+    return id;
+  }
+
+  /* Return a new clip rectangle ID that is shared with no other set of
+     clip rectangles.  */
+
+  private static synchronized long
+  newClipID ()
+  {
+    return ++clip_serial;
+  }
+
   /* Mark this GC as dirty.  Apply parameters to the paint and
      recompute real_clip_rects.  */
 
@@ -95,7 +221,6 @@ public final class EmacsGC extends EmacsHandleObject
   markDirty (boolean clipRectsChanged)
   {
     int i;
-    Bitmap stippleBitmap;
 
     if (clipRectsChanged)
       {
@@ -113,62 +238,220 @@ public final class EmacsGC extends EmacsHandleObject
 	else
 	  real_clip_rects = clip_rects;
 
-	clipRectID = ++clip_serial;
+	/* Clip masks are not interned, so a GC with a clip mask always
+	   receives an ID of its own.  */
+
+	if (clip_mask != null)
+	  clipRectID = newClipID ();
+	else
+	  clipRectID = internClipRects (real_clip_rects);
       }
 
     /* A line_width of 0 is equivalent to that of 1.  */
     gcPaint.setStrokeWidth (line_width < 1 ? 1 : line_width);
     gcPaint.setColor (foreground | 0xff000000);
 
-    /* Update the stipple object with the new stipple bitmap, or delete
-       it if the stipple has been cleared on systems too old to support
-       modifying such objects.  */
+    /* Release the stipple tile if the stipple has been cleared.  */
+
+    if (stipple == null)
+      releaseStippleTile ();
+
+    /* Likewise for the outline of the clip mask.  */
 
-    if (stipple != null)
+    if (clip_mask == null)
       {
-	stippleBitmap = stipple.getBitmap ();
+	clipMaskPath = null;
+	clipMaskSource = null;
+      }
+  }
+
+  /* Bring the outline of the clip mask up to date with its contents
+     and the clip origin, assigning a new clip rectangle ID if it
+     changes.  Drawables must call this before comparing clipRectID
+     with the ID of the clip they last applied.  Do nothing if there is
+     no clip mask.
 
-	/* Allocate a new tile object if none is already present or it
-	   cannot be reconfigured.  */
-	if (tileObject == null)
+     The outline is the union of each run of set pixels within each row
+     of the mask, and is only computed anew once the mask is modified;
+     thereafter, it is simply offset to track the clip origin.  */
+
+  public void
+  updateClipMask ()
+  {
+    Bitmap source;
+    int generation, width, height, x, y, start;
+    int[] row;
+    Region region;
+
+    if (clip_mask == null)
+      return;
+
+    source = clip_mask.bitmap;
+
+    /* As with stipples, assume that clip masks are never modified on
+       Android 3.0 and earlier.  */
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR1)
+      generation = source.getGenerationId ();
+    else
+      generation = 0;
+
+    if (clipMaskPath == null || source != clipMaskSource
+	|| generation != clipMaskGeneration)
+      {
+	width = source.getWidth ();
+	height = source.getHeight ();
+	row = new int[width];
+	region = new Region ();
+
+	for (y = 0; y < height; ++y)
 	  {
-	    tileObject = new EmacsTileObject (stippleBitmap);
-	    tileObject.setTileModeXY (TileMode.REPEAT, TileMode.REPEAT);
+	    source.getPixels (row, 0, width, 0, y, width, 1);
+
+	    /* A pixel is set if the topmost bit of its alpha channel
+	       is, as in android_blit_copy.  */
+
+	    for (x = 0; x < width;)
+	      {
+		if (row[x] >= 0)
+		  {
+		    x++;
+		    continue;
+		  }
+
+		start = x;
+
+		while (x < width && row[x] < 0)
+		  x++;
+
+		region.op (start, y, x, y + 1, Region.Op.UNION);
+	      }
 	  }
-	else
-	  /* Otherwise, update the existing tile object with the new
-	     bitmap.  */
-	  tileObject.setBitmap (stippleBitmap);
+
+	clipMaskPath = region.getBoundaryPath ();
+	clipMaskPath.offset (clip_x_origin, clip_y_origin);
+	clipMaskSource = source;
+	clipMaskGeneration = generation;
+	clipMaskX = clip_x_origin;
+	clipMaskY = clip_y_origin;
+	clipRectID = newClipID ();
       }
-    else if (tileObject != null)
-      tileObject.setBitmap (null);
+    else if (clip_x_origin != clipMaskX || clip_y_origin != clipMaskY)
+      {
+	clipMaskPath.offset (clip_x_origin - clipMaskX,
+			     clip_y_origin - clipMaskY);
+	clipMaskX = clip_x_origin;
+	clipMaskY = clip_y_origin;
+	clipRectID = newClipID ();
+      }
+  }
+
+  /* Return the outline of the clip mask, as computed by the last call
+     to `updateClipMask', or NULL if there is no clip mask.  */
+
+  public Path
+  getClipMaskPath ()
+  {
+    return clip_mask != null ? clipMaskPath : null;
   }
 
-  /* Prepare the tile object to draw a stippled image onto a section of
-     a drawable defined by RECT.  It is an error to call this function
-     unless the `stipple' field of the GContext is set.  */
+  /* Release the stipple tile and its shader.  */
 
   private void
-  prepareStipple (Rect rect)
+  releaseStippleTile ()
   {
-    int sx, sy; /* Stipple origin.  */
-    int bw, bh; /* Stipple size.  */
-    Bitmap bitmap;
-    Rect boundsRect;
-
-    /* Retrieve the dimensions of the stipple bitmap, which doubles as
-       the unit of advance for this stipple.  */
-    bitmap = tileObject.getBitmap ();
-    bw     = bitmap.getWidth ();
-    bh     = bitmap.getHeight ();
-
-    /* Align the lower left corner of the bounds rectangle to the
-       initial position of the stipple.  */
-    sx = (rect.left % bw) * -1 + (-ts_origin_x % bw) * -1;
-    sy = (rect.top  % bh) * -1 + (-ts_origin_y % bh) * -1;
-    boundsRect = new Rect (rect.left + sx, rect.top + sy,
-			   rect.right, rect.bottom);
-    tileObject.setBounds (boundsRect);
+    if (stippleTile != null)
+      stippleTile.recycle ();
+
+    stippleTile = null;
+    stippleSource = null;
+    stippleShader = null;
+  }
+
+  /* Return a paint that fills shapes with the stipple pattern defined
+     for this GContext, in the foreground color where the pattern is
+     on, and in the background color where off.  It is an error to call
+     this function unless the `stipple' field of the GContext is set.
+
+     The pattern is rendered into a tile once, and the tile is redrawn
+     only when the stipple's contents or either color changes.  */
+
+  private Paint
+  getStipplePaint ()
+  {
+    Bitmap source;
+    int generation, fg, bg;
+    Canvas canvas;
+    Paint paint;
+    boolean newShader;
+
+    source = stipple.getBitmap ();
+    fg = foreground | 0xff000000;
+    bg = background | 0xff000000;
+
+    /* Generation IDs, which change whenever a bitmap is modified, are
+       unavailable on Android 3.0 and earlier.  Assume that stipples
+       are never modified there.  */
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR1)
+      generation = source.getGenerationId ();
+    else
+      generation = 0;
+
+    newShader = false;
+
+    if (stippleTile == null || source != stippleSource
+	|| generation != stippleGeneration
+	|| fg != stippleForeground || bg != stippleBackground)
+      {
+	/* Reuse the existing tile if its dimensions are unchanged.  */
+
+	if (stippleTile == null
+	    || stippleTile.getWidth () != source.getWidth ()
+	    || stippleTile.getHeight () != source.getHeight ())
+	  {
+	    releaseStippleTile ();
+	    stippleTile = Bitmap.createBitmap (source.getWidth (),
+					       source.getHeight (),
+					       Bitmap.Config.ARGB_8888);
+	  }
+
+	/* Fill the tile with the background color, and paint the
+	   stipple's set pixels over it in the foreground.  */
+
+	stippleTile.eraseColor (bg);
+	canvas = new Canvas (stippleTile);
+	paint = new Paint ();
+	paint.setColorFilter (new PorterDuffColorFilter (fg, Mode.SRC_IN));
+	canvas.drawBitmap (source, 0f, 0f, paint);
+
+	if (stipplePaint == null)
+	  {
+	    stipplePaint = new Paint ();
+	    stipplePaint.setAntiAlias (false);
+	    stippleMatrix = new Matrix ();
+	  }
+
+	stippleShader = new BitmapShader (stippleTile, TileMode.REPEAT,
+					  TileMode.REPEAT);
+	stipplePaint.setShader (stippleShader);
+	stippleSource = source;
+	stippleGeneration = generation;
+	stippleForeground = fg;
+	stippleBackground = bg;
+	newShader = true;
+      }
+
+    /* Align the tiles with the stipple origin.  */
+
+    if (newShader || ts_origin_x != stippleOriginX
+	|| ts_origin_y != stippleOriginY)
+      {
+	stippleMatrix.setTranslate (ts_origin_x, ts_origin_y);
+	stippleShader.setLocalMatrix (stippleMatrix);
+	stippleOriginX = ts_origin_x;
+	stippleOriginY = ts_origin_y;
+      }
+
+    return stipplePaint;
   }
 
   /* Fill the rectangle BOUNDS in the provided CANVAS with the stipple
@@ -178,21 +461,16 @@ else if (tileObject != null)
   protected void
   blitOpaqueStipple (Canvas canvas, Rect rect)
   {
-    ColorFilter filter;
-
-    prepareStipple (rect);
-    filter = new PorterDuffColorFilter (foreground | 0xff000000,
-					Mode.SRC_IN);
-    tileObject.setColorFilter (filter);
-
-    canvas.save ();
-    canvas.clipRect (rect);
-
-    tileObject.draw (canvas);
-    filter = new PorterDuffColorFilter (background | 0xff000000,
-					Mode.SRC_OUT);
-    tileObject.setColorFilter (filter);
-    tileObject.draw (canvas);
-    canvas.restore ();
+    canvas.drawRect (rect, getStipplePaint ());
+  }
+
+  @Override
+  public void
+  destroyHandle ()
+  {
+    super.destroyHandle ();
+    releaseStippleTile ();
+    clipMaskPath = null;
+    clipMaskSource = null;
   }
 };
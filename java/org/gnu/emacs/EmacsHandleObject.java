@@ -34,16 +34,15 @@
   volatile boolean destroyed;
 
   /* The handle associated with this object, set in
-     android_globalize_reference.  */
+     android_globalize_reference.  Handles are indices into a table
+     maintained by C code, and are never reused for another object
+     while the Emacs thread might still refer to this one.  */
   public long handle;
 
   public void
   destroyHandle () throws IllegalStateException
   {
-    synchronized (this)
-      {
-	destroyed = true;
-      }
+    destroyed = true;
   }
 
   public boolean
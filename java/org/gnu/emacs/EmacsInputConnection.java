@@ -37,6 +37,8 @@
 
 import android.util.Log;
 
+import java.util.ArrayList;
+
 /* Android input methods, take number six.  See textconv.c for more
    details; this is more-or-less a thin wrapper around that file.  */
 
@@ -76,6 +78,46 @@ public final class EmacsInputConnection implements InputConnection
 
   private static boolean extractAbsoluteOffsets;
 
+  /* Edits recorded in the edit journal.  */
+  private static final int EDIT_COMMIT_TEXT	      = 0;
+  private static final int EDIT_SET_COMPOSING_TEXT    = 1;
+  private static final int EDIT_SET_COMPOSING_REGION  = 2;
+  private static final int EDIT_DELETE_SURROUNDING    = 3;
+
+  private static final class Edit
+  {
+    /* The kind of this edit.  */
+    final int type;
+
+    /* The text to insert, if any.  */
+    final String text;
+
+    /* The new cursor position, start of the composing region, or
+       number of characters to delete before point.  */
+    int first;
+
+    /* The end of the composing region, or number of characters to
+       delete after point.  */
+    int second;
+
+    public
+    Edit (int type, String text, int first, int second)
+    {
+      this.type = type;
+      this.text = text;
+      this.first = first;
+      this.second = second;
+    }
+  };
+
+  /* Edits performed by the input method since the start of the
+     outermost batch edit, which have yet to be sent to Emacs.  */
+  private final ArrayList<Edit> journal;
+
+  /* Whether the journal holds a commit, and the selection should be
+     reported when it is flushed.  */
+  private boolean journalCommitted;
+
   static
   {
     if (Build.MANUFACTURER.equalsIgnoreCase ("Huawei")
@@ -97,9 +139,156 @@ public final class EmacsInputConnection implements InputConnection
   {
     this.view = view;
     this.windowHandle = view.window.handle;
+    this.journal = new ArrayList<Edit> ();
   }
 
 
+  /* Return the snapshot of the text around point sent by Emacs if it
+     reflects the current contents of the buffer, or NULL otherwise.
+     Queries answerable from this snapshot need not wait for the Emacs
+     thread.  */
+
+  private EmacsTextWindow
+  getTextWindow ()
+  {
+    EmacsTextWindow window;
+
+    window = view.textWindow;
+
+    if (window == null || !window.isCurrent (view))
+      return null;
+
+    return window;
+  }
+
+
+
+  /* Edit journal.  Input methods (swipe typing and autocorrection in
+     particular) frequently issue bursts of edits within a batch edit,
+     many of which are immediately superseded by the next, such as a
+     series of composing text updates.  Rather than send each edit to
+     the Emacs thread, record them within a journal while a batch edit
+     is underway, discarding edits whose effect is entirely undone by
+     their successors, and send what remains when the batch edit ends
+     or when the input method requests information that depends on its
+     edits having been made.  */
+
+  /* Record an edit of the given TYPE in the journal, folding it into
+     the edit preceding it if possible.  */
+
+  private void
+  recordEdit (int type, String text, int first, int second)
+  {
+    Edit last;
+
+    last = (journal.isEmpty ()
+	    ? null : journal.get (journal.size () - 1));
+
+    if (last != null)
+      {
+	switch (type)
+	  {
+	  case EDIT_COMMIT_TEXT:
+	  case EDIT_SET_COMPOSING_TEXT:
+	    /* Composing text is replaced in its entirety by both
+	       subsequent composing text and committed text, so an
+	       update to the composing text followed by either is
+	       redundant.  But composing text that is empty removes the
+	       composing region, which affects where the next edit is
+	       placed.  */
+
+	    if (last.type == EDIT_SET_COMPOSING_TEXT
+		&& !last.text.isEmpty ())
+	      journal.remove (journal.size () - 1);
+	    break;
+
+	  case EDIT_SET_COMPOSING_REGION:
+	    if (last.type == EDIT_SET_COMPOSING_REGION)
+	      journal.remove (journal.size () - 1);
+	    break;
+
+	  case EDIT_DELETE_SURROUNDING:
+	    /* Text is deleted around the selection, which consecutive
+	       deletions leave in place, so they can be combined.  */
+
+	    if (last.type == EDIT_DELETE_SURROUNDING)
+	      {
+		last.first += first;
+		last.second += second;
+
+		/* Don't overflow.  */
+		if (last.first >= 0 && last.second >= 0)
+		  return;
+
+		last.first -= first;
+		last.second -= second;
+	      }
+	    break;
+	  }
+      }
+
+    if (type == EDIT_COMMIT_TEXT)
+      journalCommitted = true;
+
+    journal.add (new Edit (type, text, first, second));
+  }
+
+  /* Send each edit in the journal to Emacs, then empty it.  */
+
+  private void
+  flushJournal ()
+  {
+    int[] selection;
+
+    if (journal.isEmpty ())
+      return;
+
+    if (EmacsService.DEBUG_IC)
+      Log.d (TAG, "flushJournal: " + journal.size () + " edit(s)");
+
+    for (Edit edit : journal)
+      {
+	switch (edit.type)
+	  {
+	  case EDIT_COMMIT_TEXT:
+	    EmacsNative.commitText (windowHandle, edit.text, edit.first);
+	    break;
+
+	  case EDIT_SET_COMPOSING_TEXT:
+	    EmacsNative.setComposingText (windowHandle, edit.text,
+					  edit.first);
+	    break;
+
+	  case EDIT_SET_COMPOSING_REGION:
+	    EmacsNative.setComposingRegion (windowHandle, edit.first,
+					    edit.second);
+	    break;
+
+	  case EDIT_DELETE_SURROUNDING:
+	    EmacsNative.deleteSurroundingText (windowHandle, edit.first,
+					       edit.second);
+	    break;
+	  }
+      }
+
+    journal.clear ();
+
+    if (syncAfterCommit && journalCommitted)
+      {
+	/* Report the selection once after all the edits in the journal
+	   are made, rather than after each commit.  */
+
+	selection = EmacsNative.getSelection (windowHandle);
+
+	if (selection != null)
+	  view.inputUpdater.updateSelectionNow (selection[0],
+						selection[1], -1, -1);
+      }
+
+    journalCommitted = false;
+  }
+
+
   /* The functions below are called by input methods whenever they
      need to perform an edit.  */
 
@@ -133,6 +322,8 @@ public final class EmacsInputConnection implements InputConnection
     if (EmacsService.DEBUG_IC)
       Log.d (TAG, "endBatchEdit");
 
+    /* Send edits recorded during the batch edit before it ends.  */
+    flushJournal ();
     EmacsNative.endBatchEdit (windowHandle);
 
     /* Subtract one from the UI thread record of the number of batch
@@ -154,6 +345,7 @@ public final class EmacsInputConnection implements InputConnection
     if (EmacsService.DEBUG_IC)
       Log.d (TAG, "commitCompletion: " + info);
 
+    flushJournal ();
     EmacsNative.commitCompletion (windowHandle,
 				  info.getText ().toString (),
 				  info.getPosition ());
@@ -186,6 +378,13 @@ public final class EmacsInputConnection implements InputConnection
     if (EmacsService.DEBUG_IC)
       Log.d (TAG, "commitText: " + text + " " + newCursorPosition);
 
+    if (batchEditCount > 0)
+      {
+	recordEdit (EDIT_COMMIT_TEXT, text.toString (),
+		    newCursorPosition, 0);
+	return true;
+      }
+
     EmacsNative.commitText (windowHandle, text.toString (),
 			    newCursorPosition);
 
@@ -203,8 +402,8 @@ public final class EmacsInputConnection implements InputConnection
 	if (selection != null)
 	  /* N.B. that the composing region is removed after text is
 	     committed.  */
-	  view.imManager.updateSelection (view, selection[0],
-					  selection[1], -1, -1);
+	  view.inputUpdater.updateSelectionNow (selection[0],
+						selection[1], -1, -1);
       }
 
     return true;
@@ -230,6 +429,13 @@ public final class EmacsInputConnection implements InputConnection
       Log.d (TAG, ("deleteSurroundingText: "
 		   + leftLength + " " + rightLength));
 
+    if (batchEditCount > 0)
+      {
+	recordEdit (EDIT_DELETE_SURROUNDING, null, leftLength,
+		    rightLength);
+	return true;
+      }
+
     EmacsNative.deleteSurroundingText (windowHandle, leftLength,
 				       rightLength);
     return true;
@@ -256,6 +462,7 @@ public final class EmacsInputConnection implements InputConnection
     if (EmacsService.DEBUG_IC)
       Log.d (TAG, "finishComposingText");
 
+    flushJournal ();
     EmacsNative.finishComposingText (windowHandle);
     return true;
   }
@@ -264,6 +471,9 @@ public final class EmacsInputConnection implements InputConnection
   public String
   getSelectedText (int flags)
   {
+    EmacsTextWindow window;
+    String string;
+
     /* Return if the input connection is out of date.  */
     if (view.icSerial < view.icGeneration)
       return null;
@@ -271,6 +481,21 @@ public final class EmacsInputConnection implements InputConnection
     if (EmacsService.DEBUG_IC)
       Log.d (TAG, "getSelectedText: " + flags);
 
+    flushJournal ();
+    window = getTextWindow ();
+
+    if (window != null)
+      {
+	/* There is no selected text if the selection is empty.  */
+	if (window.selectionStart == window.selectionEnd)
+	  return null;
+
+	string = window.getSelectedText ();
+
+	if (string != null)
+	  return string;
+      }
+
     return EmacsNative.getSelectedText (windowHandle, flags);
   }
 
@@ -279,6 +504,7 @@ public final class EmacsInputConnection implements InputConnection
   getTextAfterCursor (int length, int flags)
   {
     String string;
+    EmacsTextWindow window;
 
     /* Return if the input connection is out of date.  */
     if (view.icSerial < view.icGeneration)
@@ -287,8 +513,14 @@ public final class EmacsInputConnection implements InputConnection
     if (EmacsService.DEBUG_IC)
       Log.d (TAG, "getTextAfterCursor: " + length + " " + flags);
 
-    string = EmacsNative.getTextAfterCursor (windowHandle, length,
-					     flags);
+    flushJournal ();
+    window = getTextWindow ();
+    string = (window != null
+	      ? window.getTextAfterCursor (length) : null);
+
+    if (string == null)
+      string = EmacsNative.getTextAfterCursor (windowHandle, length,
+					       flags);
 
     if (EmacsService.DEBUG_IC)
       Log.d (TAG, "   --> " + string);
@@ -301,6 +533,7 @@ public final class EmacsInputConnection implements InputConnection
   getTextBeforeCursor (int length, int flags)
   {
     String string;
+    EmacsTextWindow window;
 
     /* Return if the input connection is out of date.  */
     if (view.icSerial < view.icGeneration)
@@ -309,8 +542,14 @@ public final class EmacsInputConnection implements InputConnection
     if (EmacsService.DEBUG_IC)
       Log.d (TAG, "getTextBeforeCursor: " + length + " " + flags);
 
-    string = EmacsNative.getTextBeforeCursor (windowHandle, length,
-					      flags);
+    flushJournal ();
+    window = getTextWindow ();
+    string = (window != null
+	      ? window.getTextBeforeCursor (length) : null);
+
+    if (string == null)
+      string = EmacsNative.getTextBeforeCursor (windowHandle, length,
+						flags);
 
     if (EmacsService.DEBUG_IC)
       Log.d (TAG, "   --> " + string);
@@ -330,6 +569,13 @@ public final class EmacsInputConnection implements InputConnection
       Log.d (TAG, ("setComposingText: "
 		   + text + " ## " + newCursorPosition));
 
+    if (batchEditCount > 0)
+      {
+	recordEdit (EDIT_SET_COMPOSING_TEXT, text.toString (),
+		    newCursorPosition, 0);
+	return true;
+      }
+
     EmacsNative.setComposingText (windowHandle, text.toString (),
 				  newCursorPosition);
     return true;
@@ -354,6 +600,12 @@ public final class EmacsInputConnection implements InputConnection
     if (EmacsService.DEBUG_IC)
       Log.d (TAG, "setComposingRegion: " + start + " " + end);
 
+    if (batchEditCount > 0)
+      {
+	recordEdit (EDIT_SET_COMPOSING_REGION, null, start, end);
+	return true;
+      }
+
     EmacsNative.setComposingRegion (windowHandle, start, end);
     return true;
   }
@@ -376,6 +628,7 @@ public final class EmacsInputConnection implements InputConnection
     if (EmacsService.DEBUG_IC)
       Log.d (TAG, "performEditorAction: " + editorAction);
 
+    flushJournal ();
     EmacsNative.performEditorAction (windowHandle, editorAction);
     return true;
   }
@@ -426,6 +679,7 @@ public final class EmacsInputConnection implements InputConnection
 	return true;
       }
 
+    flushJournal ();
     EmacsNative.performContextMenuAction (windowHandle, action);
     return true;
   }
@@ -445,6 +699,8 @@ public final class EmacsInputConnection implements InputConnection
       Log.d (TAG, "getExtractedText: " + request.hintMaxChars + ", "
 	     + request.hintMaxLines + " " + flags);
 
+    flushJournal ();
+
     /* If a request arrives with hintMaxChars, hintMaxLines and flags
        set to 0, and the system is known to be buggy, return an empty
        extracted text object with the absolute selection positions.  */
@@ -498,6 +754,7 @@ public final class EmacsInputConnection implements InputConnection
     if (EmacsService.DEBUG_IC)
       Log.d (TAG, "setSelection: " + start + " " + end);
 
+    flushJournal ();
     EmacsNative.setSelection (windowHandle, start, end);
     return true;
   }
@@ -515,6 +772,8 @@ public final class EmacsInputConnection implements InputConnection
     if (EmacsService.DEBUG_IC)
       Log.d (TAG, "sendKeyEvent: " + key);
 
+    flushJournal ();
+
     /* Use the standard API if possible.  */
 
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N)
@@ -555,6 +814,7 @@ public final class EmacsInputConnection implements InputConnection
     if (EmacsService.DEBUG_IC)
       Log.d (TAG, "requestCursorUpdates: " + cursorUpdateMode);
 
+    flushJournal ();
     EmacsNative.requestCursorUpdates (windowHandle, cursorUpdateMode);
     return true;
   }
@@ -575,6 +835,7 @@ public final class EmacsInputConnection implements InputConnection
 		      int flags)
   {
     SurroundingText text;
+    EmacsTextWindow window;
 
     /* Return if the input connection is out of date.  */
     if (view.icSerial < view.icGeneration)
@@ -584,8 +845,15 @@ public final class EmacsInputConnection implements InputConnection
       Log.d (TAG, ("getSurroundingText: " + beforeLength + ", "
 		   + afterLength));
 
-    text = EmacsNative.getSurroundingText (windowHandle, beforeLength,
-					   afterLength, flags);
+    flushJournal ();
+    window = getTextWindow ();
+    text = (window != null
+	    ? window.getSurroundingText (beforeLength, afterLength)
+	    : null);
+
+    if (text == null)
+      text = EmacsNative.getSurroundingText (windowHandle, beforeLength,
+					     afterLength, flags);
 
     if (EmacsService.DEBUG_IC && text != null)
       Log.d (TAG, ("getSurroundingText: "
@@ -610,6 +878,7 @@ public final class EmacsInputConnection implements InputConnection
     if (view.icSerial < view.icGeneration)
       return null;
 
+    flushJournal ();
     snapshot = EmacsNative.takeSnapshot (windowHandle);
 
     if (EmacsService.DEBUG_IC)
@@ -625,6 +894,12 @@ public final class EmacsInputConnection implements InputConnection
   public void
   closeConnection ()
   {
+    /* Don't lose edits made before the connection was closed.  */
+    if (view.icSerial >= view.icGeneration)
+      flushJournal ();
+
+    journal.clear ();
+    journalCommitted = false;
     batchEditCount = 0;
   }
 
@@ -637,6 +912,7 @@ public final class EmacsInputConnection implements InputConnection
       Log.d (TAG, ("replaceText: " + text + ":: " + start + ","
 		   + end + "," + newCursorPosition));
 
+    flushJournal ();
     EmacsNative.replaceText (windowHandle, start, end,
 			     text.toString (), newCursorPosition,
 			     attributes);
@@ -648,6 +924,9 @@ public final class EmacsInputConnection implements InputConnection
   public void
   reset ()
   {
+    /* Edits recorded for the previous connection no longer apply.  */
+    journal.clear ();
+    journalCommitted = false;
     batchEditCount = 0;
   }
 
@@ -0,0 +1,215 @@
+/* Communication module for Android terminals.  -*- c-file-style: "GNU" -*-
+
+Copyright (C) 2024 Free Software Foundation, Inc.
+
+This file is part of GNU Emacs.
+
+GNU Emacs is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or (at
+your option) any later version.
+
+GNU Emacs is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with GNU Emacs.  If not, see <https://www.gnu.org/licenses/>.  */
+
+package org.gnu.emacs;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import android.view.inputmethod.ExtractedText;
+
+import android.util.Log;
+
+/* Object that reports changes to the selection and extracted text of
+   a view to the input method from the UI thread.
+
+   Emacs reports the selection each time point moves, which it does
+   many times a second while a keyboard macro or isearch is underway.
+   Calling into the input method manager from the Emacs thread also
+   requires blocking queries from the UI thread for the duration (see
+   `icBeginSynchronous'), so that each update would cost a round trip
+   to the input method.  Instead, the Emacs thread records the latest
+   selection and extracted text here, and they are delivered from the
+   UI thread no more than once every MIN_INTERVAL milliseconds, with
+   any update that is superseded before it is delivered discarded.
+
+   Updates recorded before the input connection is reset are discarded
+   as well, since the input method will ask for the selection anew
+   after the connection is restarted.  */
+
+public final class EmacsInputUpdater implements Runnable
+{
+  private static final String TAG = "EmacsInputUpdater";
+
+  /* Minimum interval between deliveries, in milliseconds.  */
+  private static final long MIN_INTERVAL = 16;
+
+  /* Handler for the UI thread.  */
+  private static final Handler handler;
+
+  /* The view whose updates are delivered.  */
+  private final EmacsView view;
+
+  /* The fields below are protected by this object.  */
+
+  /* Whether a selection update is pending, the selection and
+     composing region it reports, and the input connection generation
+     in which it was recorded.  */
+  private boolean selectionPending;
+  private int selectionStart, selectionEnd;
+  private int composingStart, composingEnd;
+  private long selectionGeneration;
+
+  /* Pending extracted text, the token identifying the request it
+     answers, and the generation in which it was recorded.  */
+  private ExtractedText extractedText;
+  private int extractedToken;
+  private long extractedGeneration;
+
+  /* Whether this object has been posted to the UI thread.  */
+  private boolean posted;
+
+  /* The time of the last delivery.  */
+  private long lastDelivery;
+
+  static
+  {
+    handler = new Handler (Looper.getMainLooper ());
+  };
+
+  public
+  EmacsInputUpdater (EmacsView view)
+  {
+    this.view = view;
+  }
+
+  /* Arrange for pending updates to be delivered, unless that has
+     already been done.  Call with this object locked.  */
+
+  private void
+  schedule ()
+  {
+    long delay;
+
+    if (posted)
+      return;
+
+    posted = true;
+    delay = lastDelivery + MIN_INTERVAL - SystemClock.uptimeMillis ();
+
+    if (delay > 0)
+      handler.postDelayed (this, delay);
+    else
+      handler.post (this);
+  }
+
+  /* Report the selection and composing region given to the input
+     method, replacing any selection update that has yet to be
+     delivered.  */
+
+  public synchronized void
+  updateSelection (int newSelectionStart, int newSelectionEnd,
+		   int composingRegionStart, int composingRegionEnd)
+  {
+    selectionStart = newSelectionStart;
+    selectionEnd = newSelectionEnd;
+    composingStart = composingRegionStart;
+    composingEnd = composingRegionEnd;
+    selectionGeneration = view.icGeneration;
+    selectionPending = true;
+    schedule ();
+  }
+
+  /* Report the selection and composing region given to the input
+     method immediately, replacing any selection update that has yet
+     to be delivered, and deliver all other pending updates with it.
+     Must be called from the UI thread.
+
+     Input connections that report the selection synchronously after
+     an edit call this rather than the input method manager, so that
+     an older selection recorded by the Emacs thread cannot be
+     delivered after the newer one.  */
+
+  public void
+  updateSelectionNow (int newSelectionStart, int newSelectionEnd,
+		      int composingRegionStart, int composingRegionEnd)
+  {
+    synchronized (this)
+      {
+	selectionStart = newSelectionStart;
+	selectionEnd = newSelectionEnd;
+	composingStart = composingRegionStart;
+	composingEnd = composingRegionEnd;
+	selectionGeneration = view.icGeneration;
+	selectionPending = true;
+
+	if (posted)
+	  handler.removeCallbacks (this);
+      }
+
+    run ();
+  }
+
+  /* Report the extracted text TEXT answering the request identified
+     by TOKEN to the input method, replacing any that has yet to be
+     delivered.  */
+
+  public synchronized void
+  updateExtractedText (ExtractedText text, int token)
+  {
+    extractedText = text;
+    extractedToken = token;
+    extractedGeneration = view.icGeneration;
+    schedule ();
+  }
+
+  @Override
+  public void
+  run ()
+  {
+    boolean sendSelection;
+    int start, end, compStart, compEnd;
+    ExtractedText text;
+    int token;
+    long generation;
+
+    synchronized (this)
+      {
+	generation = view.icGeneration;
+	sendSelection = (selectionPending
+			 && selectionGeneration == generation);
+	start = selectionStart;
+	end = selectionEnd;
+	compStart = composingStart;
+	compEnd = composingEnd;
+	text = (extractedGeneration == generation
+		? extractedText : null);
+	token = extractedToken;
+
+	selectionPending = false;
+	extractedText = null;
+	posted = false;
+	lastDelivery = SystemClock.uptimeMillis ();
+      }
+
+    if (sendSelection)
+      {
+	if (EmacsService.DEBUG_IC)
+	  Log.d (TAG, ("updateSelection: " + start + " " + end
+		       + " " + compStart + " " + compEnd));
+
+	view.imManager.updateSelection (view, start, end, compStart,
+					compEnd);
+      }
+
+    if (text != null)
+      view.imManager.updateExtractedText (view, token, text);
+  }
+};
@@ -0,0 +1,188 @@
+/* Communication module for Android terminals.  -*- c-file-style: "GNU" -*-
+
+Copyright (C) 2024 Free Software Foundation, Inc.
+
+This file is part of GNU Emacs.
+
+GNU Emacs is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or (at
+your option) any later version.
+
+GNU Emacs is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with GNU Emacs.  If not, see <https://www.gnu.org/licenses/>.  */
+
+package org.gnu.emacs;
+
+import java.util.Arrays;
+
+import android.os.Build;
+
+import android.view.Choreographer;
+
+/* Queue of pointer motion reported to a window, which is sent to
+   Emacs once per display frame.
+
+   Each ACTION_MOVE event can report the motion of several tools,
+   along with intermediate positions sampled since the previous event.
+   Rather than send each to Emacs separately, the last position of
+   every tool that moved is recorded here and sent in a single call
+   when the next frame is drawn, or before any event that must be
+   ordered after them (such as a tool being released.)  Emacs then
+   generates a single touch screen update for them.
+
+   If `android-touch-motion-history' is set, every sample is recorded
+   instead, and Emacs generates an update for each.
+
+   Mouse motion is recorded as well, but only the last position is
+   retained.
+
+   This object must only be used from the UI thread.  */
+
+public final class EmacsMotionBatch implements Choreographer.FrameCallback
+{
+  /* Number of samples after which the queue is sent immediately.  */
+  private static final int MAX_SAMPLES = 256;
+
+  /* Whether every sample of touch screen motion is recorded, rather
+     than the last position of each tool.  Set by Emacs from
+     `android-touch-motion-history'.  */
+  public static volatile boolean recordHistory;
+
+  /* The window receiving the motion.  */
+  private final EmacsWindow window;
+
+  /* Pointer IDs, positions and times of each pending sample of touch
+     screen motion, and the number of samples.  */
+  private int[] ids, xs, ys;
+  private long[] times;
+  private int count;
+
+  /* Whether mouse motion is pending, and its position and time.  */
+  private boolean motionPending;
+  private int motionX, motionY;
+  private long motionTime;
+
+  /* Whether a frame callback has been posted.  */
+  private boolean scheduled;
+
+  public
+  EmacsMotionBatch (EmacsWindow window)
+  {
+    this.window = window;
+    this.ids = new int[16];
+    this.xs = new int[16];
+    this.ys = new int[16];
+    this.times = new long[16];
+  }
+
+
+
+  /* Record that the tool identified by ID moved to X, Y at TIME.
+     Samples must be recorded in order of time.  Unless recordHistory
+     is set, this replaces any position of the same tool that is still
+     pending.  */
+
+  public void
+  addTouch (int id, int x, int y, long time)
+  {
+    int size, i;
+
+    if (!recordHistory)
+      {
+	for (i = 0; i < count; ++i)
+	  {
+	    if (ids[i] == id)
+	      {
+		xs[i] = x;
+		ys[i] = y;
+		times[i] = time;
+		return;
+	      }
+	  }
+      }
+
+    if (count == ids.length)
+      {
+	size = count * 2;
+	ids = Arrays.copyOf (ids, size);
+	xs = Arrays.copyOf (xs, size);
+	ys = Arrays.copyOf (ys, size);
+	times = Arrays.copyOf (times, size);
+      }
+
+    ids[count] = id;
+    xs[count] = x;
+    ys[count] = y;
+    times[count] = time;
+    count++;
+  }
+
+  /* Record that the mouse moved to X, Y at TIME.  */
+
+  public void
+  addMotion (int x, int y, long time)
+  {
+    motionPending = true;
+    motionX = x;
+    motionY = y;
+    motionTime = time;
+  }
+
+
+
+  /* Arrange for the queue to be sent when the next frame is drawn.  */
+
+  public void
+  schedule ()
+  {
+    /* Choreographer is unavailable on Android 4.0 and earlier, so
+       send the queue immediately.  */
+
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN
+	|| count >= MAX_SAMPLES)
+      {
+	flush ();
+	return;
+      }
+
+    if (scheduled)
+      return;
+
+    scheduled = true;
+    Choreographer.getInstance ().postFrameCallback (this);
+  }
+
+  /* Send all pending motion to Emacs.  */
+
+  public void
+  flush ()
+  {
+    if (motionPending)
+      {
+	EmacsNative.sendMotionNotify (window.handle, motionX, motionY,
+				      motionTime);
+	motionPending = false;
+      }
+
+    if (count > 0)
+      {
+	EmacsNative.sendTouchMoves (window.handle, count, ids, xs, ys,
+				    times);
+	count = 0;
+      }
+  }
+
+  @Override
+  public void
+  doFrame (long frameTimeNanos)
+  {
+    scheduled = false;
+    flush ();
+  }
+};
@@ -160,6 +160,14 @@ public static native long sendTouchMove (long window, int x, int y,
 					   long time, int pointerID,
 					   int flags);
 
+  /* Send ANDROID_TOUCH_MOVE events for the first COUNT samples in
+     IDS, XS, YS and TIMES, each of which holds the pointer ID,
+     position and time of one tool, in that order.  Samples taken at
+     the same time must be contiguous.  */
+  public static native long sendTouchMoves (long window, int count,
+					    int[] ids, int[] xs,
+					    int[] ys, long[] times);
+
   /* Send an ANDROID_WHEEL event.  */
   public static native long sendWheel (long window, int x, int y,
 				       long time, int state,
@@ -278,6 +286,10 @@ public static native SurroundingText getSurroundingText (long window,
      failure.  */
   public static native int[] getSelection (long window);
 
+  /* Return the number of the last edit sent to Emacs by an input
+     method or as a key event.  Must be called from the UI thread.  */
+  public static native long getEditCounter ();
+
 
   /* Graphics functions used as replacements for potentially buggy
      Android APIs.  */
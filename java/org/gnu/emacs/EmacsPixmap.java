@@ -59,32 +59,37 @@ public final class EmacsPixmap extends EmacsHandleObject
       throw new IllegalArgumentException ("Invalid depth specified"
 					  + " for pixmap: " + depth);
 
-    switch (depth)
-      {
-      case 1:
-	if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O)
-	  bitmap = Bitmap.createBitmap (width, height,
-					Bitmap.Config.ALPHA_8,
-					false);
-	else
-	  bitmap = Bitmap.createBitmap (width, height,
-					Bitmap.Config.ALPHA_8);
-	break;
-
-      case 24:
-
-	/* Emacs doesn't just use the first kind of `createBitmap'
-	   because the latter allows specifying that the pixmap is
-	   always opaque, which really increases efficiency.  */
-	if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O)
-	  bitmap = Bitmap.createBitmap (width, height,
-					Bitmap.Config.ARGB_8888);
-	else
-	  bitmap = Bitmap.createBitmap (width, height,
-					Bitmap.Config.ARGB_8888,
-					false);
-	break;
-      }
+    /* Reuse the bitmap of a pixmap of identical dimensions and depth
+       destroyed earlier if possible.  */
+    bitmap = EmacsPixmapPool.take (width, height, depth);
+
+    if (bitmap == null)
+      switch (depth)
+	{
+	case 1:
+	  if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O)
+	    bitmap = Bitmap.createBitmap (width, height,
+					  Bitmap.Config.ALPHA_8,
+					  false);
+	  else
+	    bitmap = Bitmap.createBitmap (width, height,
+					  Bitmap.Config.ALPHA_8);
+	  break;
+
+	case 24:
+
+	  /* Emacs doesn't just use the first kind of `createBitmap'
+	     because the latter allows specifying that the pixmap is
+	     always opaque, which really increases efficiency.  */
+	  if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O)
+	    bitmap = Bitmap.createBitmap (width, height,
+					  Bitmap.Config.ARGB_8888);
+	  else
+	    bitmap = Bitmap.createBitmap (width, height,
+					  Bitmap.Config.ARGB_8888,
+					  false);
+	  break;
+	}
 
     if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB_MR1)
       /* On these old versions of Android, Bitmap.recycle frees bitmap
@@ -117,6 +122,8 @@ else if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT)
       }
 
     /* Now see if clipping has to be redone.  */
+    gc.updateClipMask ();
+
     if (gc.clipRectID == gcClipRectID)
       return canvas;
 
@@ -130,6 +137,9 @@ else if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT)
 	  canvas.clipRect (gc.real_clip_rects[i]);
       }
 
+    if (gc.clip_mask != null)
+      canvas.clipPath (gc.getClipMaskPath ());
+
     /* Save the clip rect ID again.  */
     gcClipRectID = gc.clipRectID;
     return canvas;
@@ -160,6 +170,16 @@ else if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT)
   public void
   destroyHandle ()
   {
+    /* Retain the bitmap for a subsequent pixmap if possible,
+       dispensing with both its recycling and any collection.  */
+
+    if (EmacsPixmapPool.release (bitmap, width, height, depth))
+      {
+	bitmap = null;
+	canvas = null;
+	return;
+      }
+
     bitmap.recycle ();
     bitmap = null;
 
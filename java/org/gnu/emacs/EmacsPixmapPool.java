@@ -0,0 +1,212 @@
+/* Communication module for Android terminals.  -*- c-file-style: "GNU" -*-
+
+Copyright (C) 2024 Free Software Foundation, Inc.
+
+This file is part of GNU Emacs.
+
+GNU Emacs is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or (at
+your option) any later version.
+
+GNU Emacs is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with GNU Emacs.  If not, see <https://www.gnu.org/licenses/>.  */
+
+package org.gnu.emacs;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.graphics.Bitmap;
+
+import android.os.Build;
+
+/* Pool of bitmaps released by destroyed pixmaps.
+
+   Buffers displaying many images, such as those of DocView or
+   Image-Dired, and mode lines displaying SVG images that are
+   regenerated every second, create and destroy pixmaps of the same
+   dimensions continuously.  Instead of recycling the bitmap of each
+   pixmap destroyed, and allocating a new one for the next, the bitmap
+   is retained here, in a bucket for pixmaps of its width, height and
+   depth, and handed to the next pixmap created with those
+   parameters.
+
+   No more than MAX_BYTES are retained; bitmaps in the least recently
+   used buckets are recycled once that limit is exceeded.  Nothing is
+   retained on Android 3.0 and earlier.  */
+
+public final class EmacsPixmapPool
+{
+  /* Maximum number of bytes occupied by bitmaps retained.  */
+  private static final long MAX_BYTES = 16 * 1024 * 1024;
+
+  /* Map between bucket keys and the bitmaps retained in each bucket,
+     from least to most recently used.  */
+  private static final LinkedHashMap<Long, ArrayList<Bitmap>> buckets;
+
+  /* Number of bitmaps retained and the number of bytes they
+     occupy.  */
+  private static long count, bytes;
+
+  /* Number of pixmaps created with and without a bitmap from the
+     pool.  */
+  private static long hits, misses;
+
+  static
+  {
+    buckets = new LinkedHashMap<Long, ArrayList<Bitmap>> (16, 0.75f,
+							  true);
+  };
+
+  /* Return the key of the bucket holding bitmaps for pixmaps of the
+     given WIDTH, HEIGHT and DEPTH.  */
+
+  private static long
+  getKey (int width, int height, int depth)
+  {
+    return (((long) width << 33) | ((long) height << 1)
+	    | (depth == 1 ? 1 : 0));
+  }
+
+  /* Return the number of bytes occupied by BITMAP.  */
+
+  private static long
+  getSize (Bitmap bitmap)
+  {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT)
+      return bitmap.getAllocationByteCount ();
+
+    return (long) bitmap.getRowBytes () * bitmap.getHeight ();
+  }
+
+
+
+  /* Return a retained bitmap for a pixmap of the given WIDTH, HEIGHT
+     and DEPTH, or NULL if there is none.  The contents of the bitmap
+     are undefined.  */
+
+  public static synchronized Bitmap
+  take (int width, int height, int depth)
+  {
+    ArrayList<Bitmap> bucket;
+    Bitmap bitmap;
+    Long key;
+
+    key = getKey (width, height, depth);
+    bucket = buckets.get (key);
+
+    if (bucket == null)
+      {
+	misses++;
+	return null;
+      }
+
+    bitmap = bucket.remove (bucket.size () - 1);
+
+    if (bucket.isEmpty ())
+      buckets.remove (key);
+
+    count--;
+    bytes -= getSize (bitmap);
+    hits++;
+    return bitmap;
+  }
+
+  /* Retain BITMAP, the bitmap of a pixmap of the given WIDTH, HEIGHT
+     and DEPTH being destroyed, for reuse.  Value is false if it was
+     not retained, in which case the caller must recycle it itself.
+     BITMAP must not be referenced by that pixmap afterwards.  */
+
+  public static synchronized boolean
+  release (Bitmap bitmap, int width, int height, int depth)
+  {
+    ArrayList<Bitmap> bucket;
+    Long key;
+    long size;
+
+    /* Graphics contexts cache tiles and paths derived from their
+       stipple and clip mask bitmaps, and detect changes to their
+       contents by means of generation IDs, which are not available
+       before Android 3.1.  There, a cached tile is assumed valid for
+       as long as the bitmap is the same, which would cease to hold if
+       it were handed to a different pixmap, so never retain bitmaps
+       on such systems.  */
+
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB_MR1
+	|| bitmap.isRecycled ())
+      return false;
+
+    size = getSize (bitmap);
+
+    if (size > MAX_BYTES)
+      return false;
+
+    key = getKey (width, height, depth);
+    bucket = buckets.get (key);
+
+    if (bucket == null)
+      {
+	bucket = new ArrayList<Bitmap> ();
+	buckets.put (key, bucket);
+      }
+
+    bucket.add (bitmap);
+    count++;
+    bytes += size;
+
+    if (bytes > MAX_BYTES)
+      trim (MAX_BYTES);
+
+    return true;
+  }
+
+  /* Recycle retained bitmaps, starting with those in the least
+     recently used buckets, until they occupy no more than LIMIT
+     bytes.  */
+
+  public static synchronized void
+  trim (long limit)
+  {
+    Iterator<Map.Entry<Long, ArrayList<Bitmap>>> iterator;
+    ArrayList<Bitmap> bucket;
+    Bitmap bitmap;
+
+    iterator = buckets.entrySet ().iterator ();
+
+    while (bytes > limit && iterator.hasNext ())
+      {
+	bucket = iterator.next ().getValue ();
+
+	while (bytes > limit && !bucket.isEmpty ())
+	  {
+	    bitmap = bucket.remove (0);
+	    count--;
+	    bytes -= getSize (bitmap);
+	    bitmap.recycle ();
+	  }
+
+	if (bucket.isEmpty ())
+	  iterator.remove ();
+      }
+  }
+
+
+
+  /* Return an array of the number of pixmaps created with a bitmap
+     from the pool, the number created without, the number of bitmaps
+     retained, and the number of bytes they occupy.  */
+
+  public static synchronized long[]
+  getStatistics ()
+  {
+    return new long[] { hits, misses, count, bytes };
+  }
+};
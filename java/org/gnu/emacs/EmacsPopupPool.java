@@ -0,0 +1,182 @@
+/* Communication module for Android terminals.  -*- c-file-style: "GNU" -*-
+
+Copyright (C) 2024 Free Software Foundation, Inc.
+
+This file is part of GNU Emacs.
+
+GNU Emacs is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or (at
+your option) any later version.
+
+GNU Emacs is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with GNU Emacs.  If not, see <https://www.gnu.org/licenses/>.  */
+
+package org.gnu.emacs;
+
+import java.util.ArrayList;
+
+import android.graphics.Bitmap;
+
+import android.os.Build;
+
+/* Pool of back buffers released by override-redirect windows.
+
+   Override-redirect windows, which host child frames displayed as
+   popups (such as completion menus), are detached from the window
+   manager each time they are unmapped, and their back buffers are
+   released.  Rather than recycle those bitmaps, and allocate new ones
+   (followed by a garbage collection) when the popup is displayed
+   again, they are retained here, and reused by the next
+   override-redirect window of compatible size to require a back
+   buffer.
+
+   No more than MAX_BITMAPS bitmaps occupying no more than MAX_BYTES
+   are retained; the oldest are recycled once either limit is
+   exceeded, and all of them when the system is low on memory.  */
+
+public final class EmacsPopupPool
+{
+  /* Maximum number of bitmaps retained.  */
+  private static final int MAX_BITMAPS = 4;
+
+  /* Maximum number of bytes occupied by bitmaps retained.  */
+  private static final long MAX_BYTES = 16 * 1024 * 1024;
+
+  /* List of bitmaps retained, from oldest to newest.  */
+  private static final ArrayList<Bitmap> bitmaps;
+
+  /* Number of bytes occupied by those bitmaps.  */
+  private static long bytes;
+
+  static
+  {
+    bitmaps = new ArrayList<Bitmap> ();
+  };
+
+  /* Return the number of bytes occupied by BITMAP.  */
+
+  private static long
+  getSize (Bitmap bitmap)
+  {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT)
+      return bitmap.getAllocationByteCount ();
+
+    return (long) bitmap.getRowBytes () * bitmap.getHeight ();
+  }
+
+
+
+  /* Retain BITMAP, the back buffer of an override-redirect window,
+     for reuse.  BITMAP must no longer be referenced by that
+     window.  */
+
+  public static synchronized void
+  release (Bitmap bitmap)
+  {
+    Bitmap oldest;
+    long size;
+
+    size = getSize (bitmap);
+
+    if (size > MAX_BYTES || bitmap.isRecycled ())
+      {
+	bitmap.recycle ();
+	return;
+      }
+
+    bitmaps.add (bitmap);
+    bytes += size;
+
+    while (bitmaps.size () > MAX_BITMAPS)
+      {
+	oldest = bitmaps.remove (0);
+	bytes -= getSize (oldest);
+	oldest.recycle ();
+      }
+
+    trim (MAX_BYTES);
+  }
+
+  /* Recycle retained bitmaps, oldest first, until they occupy no more
+     than LIMIT bytes.  */
+
+  public static synchronized void
+  trim (long limit)
+  {
+    Bitmap oldest;
+
+    while (bytes > limit && !bitmaps.isEmpty ())
+      {
+	oldest = bitmaps.remove (0);
+	bytes -= getSize (oldest);
+	oldest.recycle ();
+      }
+  }
+
+  /* Return a retained bitmap measuring WIDTH by HEIGHT pixels, or NULL
+     if there is none.  The contents of the bitmap are undefined.
+
+     On Android 4.4 and later, a larger bitmap might be reconfigured to
+     the requested dimensions, provided that it is not more than twice
+     as large as required.  */
+
+  public static synchronized Bitmap
+  take (int width, int height)
+  {
+    Bitmap bitmap;
+    int i;
+    long needed, size;
+
+    /* Search for a bitmap of identical dimensions, newest first.  */
+
+    for (i = bitmaps.size () - 1; i >= 0; --i)
+      {
+	bitmap = bitmaps.get (i);
+
+	if (bitmap.getWidth () == width
+	    && bitmap.getHeight () == height)
+	  {
+	    bitmaps.remove (i);
+	    bytes -= getSize (bitmap);
+	    return bitmap;
+	  }
+      }
+
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT)
+      return null;
+
+    needed = (long) width * height * 4;
+
+    for (i = bitmaps.size () - 1; i >= 0; --i)
+      {
+	bitmap = bitmaps.get (i);
+	size = getSize (bitmap);
+
+	if (size < needed || size > needed * 2)
+	  continue;
+
+	bitmaps.remove (i);
+	bytes -= size;
+
+	try
+	  {
+	    bitmap.reconfigure (width, height, Bitmap.Config.ARGB_8888);
+	  }
+	catch (IllegalArgumentException exception)
+	  {
+	    bitmap.recycle ();
+	    return null;
+	  }
+
+	return bitmap;
+      }
+
+    return null;
+  }
+};
@@ -32,10 +32,21 @@
 import android.util.Log;
 
 import android.os.Build;
+import android.os.ParcelFileDescriptor;
 
+import android.provider.DocumentsContract;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 
 /* This class implements EmacsClipboard for Android 3.0 and later
    systems.  */
@@ -44,12 +55,38 @@ public final class EmacsSdk11Clipboard extends EmacsClipboard
   implements ClipboardManager.OnPrimaryClipChangedListener
 {
   private static final String TAG = "EmacsSdk11Clipboard";
+
+  /* Length of the longest string that will be placed in the clipboard
+     as text.  Longer strings are saved to a file, which is placed in
+     the clipboard by way of a URI, as transferring them to the
+     clipboard service risks exceeding the size limit of a binder
+     transaction.  */
+  private static final int MAX_TEXT_LENGTH = 128 * 1024;
+
   private ClipboardManager manager;
   private boolean ownsClipboard;
   private int clipboardChangedCount;
   private int monitoredClipboardChangedCount;
   private ContentResolver resolver;
 
+  /* The fields below are a snapshot of the clipboard, with which
+     queries are answered without calling into the clipboard service.
+     They are valid while cacheValid is set and, on Android 10 and
+     later, cacheFocusCount is equal to focusCount.  */
+  private boolean cacheValid;
+  private int cacheFocusCount;
+
+  /* The contents of the clipboard, or NULL if it is empty.  */
+  private ClipData cachedClip;
+
+  /* The text of that clip and its targets, or NULL if they have yet
+     to be computed.  */
+  private String cachedText;
+  private String[] cachedTargets;
+
+  /* The directory holding files created for long strings.  */
+  private final File clipDirectory;
+
   public
   EmacsSdk11Clipboard ()
   {
@@ -65,6 +102,8 @@ public final class EmacsSdk11Clipboard extends EmacsClipboard
        descriptors.  */
 
     resolver = EmacsService.SERVICE.getContentResolver ();
+    clipDirectory = new File (EmacsService.SERVICE.getCacheDir (),
+			      "clipboard");
   }
 
   @Override
@@ -80,6 +119,10 @@ public final class EmacsSdk11Clipboard extends EmacsClipboard
       {
 	ownsClipboard = false;
 
+	/* Another program has changed the clipboard, so discard its
+	   cached contents.  */
+	cacheValid = false;
+
 	/* Reset both values back to 0.  */
 	monitoredClipboardChangedCount = 0;
 	clipboardChangedCount = 0;
@@ -94,17 +137,180 @@ public final class EmacsSdk11Clipboard extends EmacsClipboard
   setClipboard (String string)
   {
     ClipData data;
+    Uri uri;
+
+    data = null;
+
+    /* The documents provider through which long strings are served
+       is only available on Android 4.4 and later.  */
+
+    if (string.length () > MAX_TEXT_LENGTH
+	&& Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT)
+      {
+	uri = saveClipFile (string);
+
+	if (uri != null)
+	  data = ClipData.newUri (resolver, "Emacs", uri);
+      }
+
+    if (data == null)
+      data = ClipData.newPlainText ("Emacs", string);
 
-    data = ClipData.newPlainText ("Emacs", string);
     manager.setPrimaryClip (data);
     ownsClipboard = true;
 
+    /* Answer subsequent queries with the new clip.  */
+    cacheClip (data);
+    cachedText = string;
+
     /* onPrimaryClipChanged will be called again.  Use this
        variable to keep track of how many times the clipboard has
        been changed.  */
     ++clipboardChangedCount;
   }
 
+  /* Save STRING to a new file in clipDirectory, delete any other
+     files within, and return a URI through which the documents
+     provider will serve it, or NULL upon failure.  */
+
+  private Uri
+  saveClipFile (String string)
+  {
+    File file;
+    File[] files;
+    FileOutputStream stream;
+    Writer writer;
+
+    file = null;
+    writer = null;
+
+    try
+      {
+	if (!clipDirectory.isDirectory () && !clipDirectory.mkdirs ())
+	  return null;
+
+	file = File.createTempFile ("clip", ".txt", clipDirectory);
+	stream = new FileOutputStream (file);
+	writer = new BufferedWriter (new OutputStreamWriter (stream,
+							     "UTF-8"));
+	writer.write (string);
+	writer.close ();
+	writer = null;
+      }
+    catch (IOException e)
+      {
+	Log.w (TAG, "saveClipFile: " + e);
+
+	if (file != null)
+	  file.delete ();
+
+	return null;
+      }
+    finally
+      {
+	try
+	  {
+	    if (writer != null)
+	      writer.close ();
+	  }
+	catch (IOException e)
+	  {
+
+	  }
+      }
+
+    /* Delete the files saved for previous clips, which can no longer
+       be pasted.  */
+
+    files = clipDirectory.listFiles ();
+
+    if (files != null)
+      {
+	for (File other : files)
+	  {
+	    if (!other.equals (file))
+	      other.delete ();
+	  }
+      }
+
+    return DocumentsContract.buildDocumentUri ("org.gnu.emacs",
+					       file.getAbsolutePath ());
+  }
+
+  /* Return the file saved by `saveClipFile' that is named by URI, or
+     NULL if URI does not name such a file.  */
+
+  private File
+  getClipFile (Uri uri)
+  {
+    File file;
+    String documentId;
+
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT
+	|| !"org.gnu.emacs".equals (uri.getAuthority ()))
+      return null;
+
+    try
+      {
+	documentId = DocumentsContract.getDocumentId (uri);
+      }
+    catch (IllegalArgumentException e)
+      {
+	return null;
+      }
+
+    file = new File (documentId);
+
+    if (!clipDirectory.equals (file.getParentFile ()))
+      return null;
+
+    return file;
+  }
+
+  /* Return the contents of FILE, a file saved by `saveClipFile', or
+     NULL if it cannot be read.  */
+
+  private static String
+  readClipFile (File file)
+  {
+    StringBuilder builder;
+    Reader reader;
+    char[] buffer;
+    int rc;
+
+    reader = null;
+    builder = new StringBuilder ((int) Math.min (file.length (),
+						 Integer.MAX_VALUE));
+    buffer = new char[8192];
+
+    try
+      {
+	reader = new InputStreamReader (new FileInputStream (file),
+					"UTF-8");
+
+	while ((rc = reader.read (buffer)) != -1)
+	  builder.append (buffer, 0, rc);
+      }
+    catch (IOException e)
+      {
+	return null;
+      }
+    finally
+      {
+	try
+	  {
+	    if (reader != null)
+	      reader.close ();
+	  }
+	catch (IOException e)
+	  {
+
+	  }
+      }
+
+    return builder.toString ();
+  }
+
   /* Return whether or not Emacs owns the clipboard.  Value is 1 if
      Emacs does, 0 if Emacs does not, and -1 if that information is
      unavailable.  */
@@ -119,41 +325,91 @@ public final class EmacsSdk11Clipboard extends EmacsClipboard
     return ownsClipboard ? 1 : 0;
   }
 
+  /* Replace the clipboard snapshot with CLIP.  */
+
+  private void
+  cacheClip (ClipData clip)
+  {
+    cachedClip = clip;
+    cachedText = null;
+    cachedTargets = null;
+    cacheFocusCount = focusCount;
+    cacheValid = true;
+  }
+
+  /* Return the contents of the clipboard, from the snapshot if it is
+     still valid.  */
+
+  private ClipData
+  getClip ()
+  {
+    if (!cacheValid
+	|| (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q
+	    && cacheFocusCount != focusCount))
+      /* N.B. that Android calls the clipboard the ``primary clip'';
+	 it is not related to the X primary selection.  */
+      cacheClip (manager.getPrimaryClip ());
+
+    return cachedClip;
+  }
+
   /* Return whether or not clipboard content currently exists.  */
 
   @Override
-  public boolean
+  public synchronized boolean
   clipboardExists ()
   {
-    return manager.hasPrimaryClip ();
+    return getClip () != null;
   }
 
   /* Return the current content of the clipboard, as plain text, or
      NULL if no content is available.  */
 
   @Override
-  public String
+  public synchronized String
   getClipboard ()
   {
     ClipData clip;
     CharSequence text;
     Context context;
+    Uri uri;
+    File file;
 
-    clip = manager.getPrimaryClip ();
+    clip = getClip ();
 
     if (clip == null || clip.getItemCount () < 1)
       return null;
 
-    context = EmacsService.SERVICE;
-    text = clip.getItemAt (0).coerceToText (context);
-    return text.toString ();
+    /* Coercing a clip holding a URI to text reads the resource it
+       names, so save the result.  */
+
+    if (cachedText == null)
+      {
+	/* If the clip is a string saved by Emacs, read it directly
+	   rather than through the documents provider.  */
+
+	uri = clip.getItemAt (0).getUri ();
+	file = uri != null ? getClipFile (uri) : null;
+
+	if (file != null)
+	  cachedText = readClipFile (file);
+
+	if (cachedText == null)
+	  {
+	    context = EmacsService.SERVICE;
+	    text = clip.getItemAt (0).coerceToText (context);
+	    cachedText = text.toString ();
+	  }
+      }
+
+    return cachedText;
   }
 
   /* Return an array of targets currently provided by the
      clipboard, or NULL if there are none.  */
 
   @Override
-  public String[]
+  public synchronized String[]
   getClipboardTargets ()
   {
     ClipData clip;
@@ -161,13 +417,14 @@ public final class EmacsSdk11Clipboard extends EmacsClipboard
     String[] typeArray;
     int i;
 
-    /* N.B. that Android calls the clipboard the ``primary clip''; it
-       is not related to the X primary selection.  */
-    clip = manager.getPrimaryClip ();
+    clip = getClip ();
 
     if (clip == null)
       return null;
 
+    if (cachedTargets != null)
+      return cachedTargets;
+
     description = clip.getDescription ();
     i = description.getMimeTypeCount ();
     typeArray = new String[i];
@@ -175,6 +432,7 @@ public final class EmacsSdk11Clipboard extends EmacsClipboard
     for (i = 0; i < description.getMimeTypeCount (); ++i)
       typeArray[i] = description.getMimeType (i);
 
+    cachedTargets = typeArray;
     return typeArray;
   }
 
@@ -198,13 +456,19 @@ public final class EmacsSdk11Clipboard extends EmacsClipboard
     ClipData data;
     String mimeType;
     AssetFileDescriptor assetFd;
+    ParcelFileDescriptor fd;
     Uri uri;
+    File file;
 
     /* Now obtain the clipboard data and the data corresponding to
        that MIME type.  */
 
     mimeType = target;
-    data = manager.getPrimaryClip ();
+
+    synchronized (this)
+      {
+	data = getClip ();
+      }
 
     if (data == null || data.getItemCount () < 1)
       return null;
@@ -216,6 +480,18 @@ public final class EmacsSdk11Clipboard extends EmacsClipboard
 	if (uri == null)
 	  return null;
 
+	/* Text saved by Emacs can be read from its file.  */
+
+	file = getClipFile (uri);
+
+	if (file != null && mimeType.startsWith ("text/"))
+	  {
+	    fd = ParcelFileDescriptor.open (file,
+					    ParcelFileDescriptor.MODE_READ_ONLY);
+	    return new AssetFileDescriptor (fd, 0,
+					    AssetFileDescriptor.UNKNOWN_LENGTH);
+	  }
+
 	/* Now open the file descriptor.  */
 	assetFd = resolver.openTypedAssetFileDescriptor (uri, mimeType,
 							 null);
@@ -30,6 +30,7 @@
 import java.util.List;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.FutureTask;
 
@@ -113,6 +114,17 @@ public final class EmacsService extends Service
   /* Handler used to run tasks on the main thread.  */
   private Handler handler;
 
+  /* Tasks queued for the main thread by `runOnUiThread', in the order
+     they were queued.  Access is synchronized by this list.  */
+  private ArrayList<Runnable> uiQueue;
+
+  /* Whether a message to run the tasks in `uiQueue' has been posted
+     to the main thread.  Access is synchronized by `uiQueue'.  */
+  private boolean uiQueuePosted;
+
+  /* Runnable that runs the tasks in `uiQueue'.  */
+  private Runnable uiQueueRunner;
+
   /* Content resolver used to access URIs.  */
   private ContentResolver resolver;
 
@@ -240,11 +252,21 @@ public final class EmacsService extends Service
     final double scaledDensity;
     double tempScaledDensity;
 
+    EmacsStartupTracer.mark (EmacsStartupTracer.SERVICE_CREATE);
     super.onCreate ();
 
     SERVICE = this;
     resources = getResources ();
     handler = new Handler (Looper.getMainLooper ());
+    uiQueue = new ArrayList<Runnable> ();
+    uiQueueRunner = new Runnable () {
+	@Override
+	public void
+	run ()
+	{
+	  runUiQueue ();
+	}
+      };
     manager = getAssets ();
     app_context = getApplicationContext ();
     metrics = resources.getDisplayMetrics ();
@@ -339,60 +361,112 @@ invocation of app_process (through android-emacs) can
   public void
   onLowMemory ()
   {
+    EmacsPixmapPool.trim (0);
+    EmacsPopupPool.trim (0);
     EmacsNative.onLowMemory ();
     super.onLowMemory ();
   }
 
 
 
+  /* Run each task in `uiQueue' in order.  Tasks queued while doing
+     so are run in the next message.  */
+
+  private void
+  runUiQueue ()
+  {
+    Runnable[] tasks;
+
+    synchronized (uiQueue)
+      {
+	tasks = uiQueue.toArray (new Runnable[uiQueue.size ()]);
+	uiQueue.clear ();
+	uiQueuePosted = false;
+      }
+
+    for (Runnable task : tasks)
+      task.run ();
+  }
+
   /* Functions from here on must only be called from the Emacs
      thread.  */
 
+  /* Arrange for RUNNABLE to be run on the main thread.
+
+     Rather than post a message for each runnable, runnables are
+     appended to a queue, and a single message is posted to run every
+     runnable in that queue when the first is queued.  Consequently, a
+     sequence of operations queued by the Emacs thread in quick
+     succession, such as when a frame is created or deleted, is run by
+     the main thread without intervening context switches.
+     `syncRunnable' and `syncCallables' also queue their tasks here,
+     so that waiting for a task also completes all operations queued
+     before it in the same message.
+
+     A runnable queued while that message is pending is run within it,
+     ahead of any message posted to the main thread by other means in
+     the meantime.  Operations whose order matters, such as those that
+     map, unmap or otherwise alter windows, must therefore all be
+     queued here rather than posted to views or handlers.  */
+
   public void
   runOnUiThread (Runnable runnable)
   {
-    handler.post (runnable);
+    synchronized (uiQueue)
+      {
+	uiQueue.add (runnable);
+
+	if (uiQueuePosted)
+	  return;
+
+	uiQueuePosted = true;
+      }
+
+    handler.post (uiQueueRunner);
   }
 
+  /* Create and return the view of WINDOW, with the visibility
+     VISIBILITY, and focused by default if ISFOCUSEDBYDEFAULT.  Must be
+     called from the UI thread.  */
+
   public EmacsView
-  getEmacsView (final EmacsWindow window, final int visibility,
-		final boolean isFocusedByDefault)
+  createEmacsView (EmacsWindow window, int visibility,
+		   boolean isFocusedByDefault)
   {
-    Runnable runnable;
-    FutureTask<EmacsView> task;
+    EmacsView view;
 
-    task = new FutureTask<EmacsView> (new Callable<EmacsView> () {
-	@Override
-	public EmacsView
-	call ()
-	{
-	  EmacsView view;
+    view = new EmacsView (window);
+    view.setVisibility (visibility);
 
-	  view = new EmacsView (window);
-	  view.setVisibility (visibility);
-
-	  /* The following function is only present on Android 26
-	     or later.  */
-	  if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O)
-	    view.setFocusedByDefault (isFocusedByDefault);
-
-	  return view;
-	}
-      });
+    /* The following function is only present on Android 26 or
+       later.  */
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O)
+      view.setFocusedByDefault (isFocusedByDefault);
 
-    return EmacsService.<EmacsView>syncRunnable (task);
+    return view;
   }
 
+  /* Save the position of VIEW on screen in COORDINATES.  Use the
+     position recorded by VIEW if it is known, and ask the UI thread
+     otherwise, recording the position obtained.  */
+
   public void
   getLocationOnScreen (final EmacsView view, final int[] coordinates)
   {
     FutureTask<Void> task;
 
+    if (view.getCachedLocationOnScreen (coordinates))
+      return;
+
     task = new FutureTask<Void> (new Callable<Void> () {
 	public Void
 	call ()
 	{
-	  view.getLocationOnScreen (coordinates);
+	  int[] locations;
+
+	  locations = view.refreshLocation ();
+	  coordinates[0] = locations[2];
+	  coordinates[1] = locations[3];
 	  return null;
 	}
       });
@@ -400,16 +474,25 @@ invocation of app_process (through android-emacs) can
     EmacsService.<Void>syncRunnable (task);
   }
 
+  /* Likewise, but save the position of VIEW within its window.  */
+
   public void
   getLocationInWindow (final EmacsView view, final int[] coordinates)
   {
     FutureTask<Void> task;
 
+    if (view.getCachedLocationInWindow (coordinates))
+      return;
+
     task = new FutureTask<Void> (new Callable<Void> () {
 	public Void
 	call ()
 	{
-	  view.getLocationInWindow (coordinates);
+	  int[] locations;
+
+	  locations = view.refreshLocation ();
+	  coordinates[0] = locations[0];
+	  coordinates[1] = locations[1];
 	  return null;
 	}
       });
@@ -622,6 +705,24 @@ invocation of app_process (through android-emacs) can
     return configuration.keyboard != Configuration.KEYBOARD_NOKEYS;
   }
 
+  /* Return the statistics of the pool of pixmap bitmaps, as returned
+     by `EmacsPixmapPool.getStatistics'.  */
+
+  public long[]
+  getPixmapPoolStatistics ()
+  {
+    return EmacsPixmapPool.getStatistics ();
+  }
+
+  /* Set whether every sample of touch screen motion is reported to
+     Emacs, as with `android-touch-motion-history'.  */
+
+  public void
+  setTouchMotionHistory (boolean history)
+  {
+    EmacsMotionBatch.recordHistory = history;
+  }
+
   public String
   nameKeysym (int keysym)
   {
@@ -785,7 +886,10 @@ invocation of app_process (through android-emacs) can
 
   /* Wait synchronously for the specified TASK to complete in the UI
      thread, then return its result.  Must be called from the Emacs
-     thread.  */
+     thread.
+
+     TASK is run after any operations already queued by
+     `runOnUiThread', and in the same message.  */
 
   public static <V> V
   syncRunnable (FutureTask<V> task)
@@ -816,6 +920,72 @@ invocation of app_process (through android-emacs) can
     return object;
   }
 
+  /* Run each of TASKS in the UI thread, in order and in a single
+     message, and wait for all of them to complete.  Value is an array
+     of their results, in the same order.  Must be called from the
+     Emacs thread.
+
+     Only one round trip to the UI thread is required, however many
+     tasks there are, where calling `syncRunnable' for each would
+     require one apiece.  If a task throws an exception, the tasks
+     after it are not run, and the exception is signaled to the caller
+     as by `syncRunnable'.  */
+
+  public static Object[]
+  syncCallables (final Callable<?>... tasks)
+  {
+    final Object[] results;
+    final Exception[] error;
+    final CountDownLatch latch;
+
+    results = new Object[tasks.length];
+    error = new Exception[1];
+    latch = new CountDownLatch (1);
+
+    EmacsNative.beginSynchronous ();
+    SERVICE.runOnUiThread (new Runnable () {
+	@Override
+	public void
+	run ()
+	{
+	  int i;
+
+	  try
+	    {
+	      for (i = 0; i < tasks.length; ++i)
+		results[i] = tasks[i].call ();
+	    }
+	  catch (Exception exception)
+	    {
+	      error[0] = exception;
+	    }
+	  finally
+	    {
+	      latch.countDown ();
+	    }
+	}
+      });
+
+    try
+      {
+	latch.await ();
+      }
+    catch (InterruptedException exception)
+      {
+	EmacsNative.emacsAbort ();
+      }
+
+    EmacsNative.endSynchronous ();
+
+    /* The latch guarantees that the contents of ERROR and RESULTS
+       written by the UI thread are visible here.  */
+
+    if (error[0] != null)
+      throw new RuntimeException (error[0]);
+
+    return results;
+  }
+
 
 
   /* IMM functions such as `updateSelection' holds an internal lock
@@ -882,13 +1052,42 @@ invocation of app_process (through android-emacs) can
 		   + composingRegionStart + " "
 		   + composingRegionEnd));
 
-    icBeginSynchronous ();
-    window.view.imManager.updateSelection (window.view,
-					   newSelectionStart,
-					   newSelectionEnd,
-					   composingRegionStart,
-					   composingRegionEnd);
-    icEndSynchronous ();
+    /* Deliver the update from the UI thread, to which it will be
+       sent once any updates following in quick succession have been
+       folded into it.  */
+    window.view.inputUpdater.updateSelection (newSelectionStart,
+					      newSelectionEnd,
+					      composingRegionStart,
+					      composingRegionEnd);
+  }
+
+  /* Save a snapshot of the text around point in WINDOW, so that
+     input method queries can be answered from the UI thread.  TEXT
+     is the text, or NULL if no snapshot is available; OFFSET is the
+     position of its first character.  SELECTIONSTART, SELECTIONEND,
+     COMPOSINGSTART and COMPOSINGEND are the bounds of the selection
+     and the composing region, and COUNTER is the number of the last
+     edit reflected in the snapshot.  */
+
+  public void
+  updateTextWindow (EmacsWindow window, String text, int offset,
+		    int selectionStart, int selectionEnd,
+		    int composingStart, int composingEnd,
+		    long counter)
+  {
+    EmacsView view;
+
+    view = window.view;
+
+    if (text == null)
+      view.textWindow = null;
+    else
+      view.textWindow = new EmacsTextWindow (text, offset,
+					     selectionStart,
+					     selectionEnd,
+					     composingStart,
+					     composingEnd, counter,
+					     view.icGeneration);
   }
 
   public void
@@ -952,7 +1151,10 @@ invocation of app_process (through android-emacs) can
     offsets = new int[2];
     builder = new CursorAnchorInfo.Builder ();
     matrix = new Matrix (window.view.getMatrix ());
-    window.view.getLocationOnScreen (offsets);
+
+    if (!window.view.getCachedLocationOnScreen (offsets))
+      window.view.getLocationOnScreen (offsets);
+
     matrix.postTranslate (offsets[0], offsets[1]);
     builder.setMatrix (matrix);
     builder.setInsertionMarkerLocation (x, y, yBaseline, yBottom,
@@ -1293,6 +1495,16 @@ else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M)
 			temp, };
   }
 
+  /* Return the time elapsed between the creation of the application
+     and each phase of startup, in nanoseconds.  See
+     EmacsStartupTracer for the order of the elements returned.  */
+
+  public long[]
+  getStartupTimings ()
+  {
+    return EmacsStartupTracer.getTimings ();
+  }
+
   public void
   updateExtractedText (EmacsWindow window, ExtractedText text,
 		       int token)
@@ -1300,10 +1512,7 @@ else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M)
     if (DEBUG_IC)
       Log.d (TAG, "updateExtractedText: @" + token + ", " + text);
 
-    icBeginSynchronous ();
-    window.view.imManager.updateExtractedText (window.view,
-					       token, text);
-    icEndSynchronous ();
+    window.view.inputUpdater.updateExtractedText (text, token);
   }
 
 
@@ -2112,6 +2321,7 @@ In addition, arbitrary runtime exceptions (such as
 	public void
 	run ()
 	{
+	  EmacsDesktopNotification.forget (string, true);
 	  manager.cancel (string, 2);
 	}
       });
@@ -0,0 +1,238 @@
+/* Communication module for Android terminals.  -*- c-file-style: "GNU" -*-
+
+Copyright (C) 2024 Free Software Foundation, Inc.
+
+This file is part of GNU Emacs.
+
+GNU Emacs is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or (at
+your option) any later version.
+
+GNU Emacs is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with GNU Emacs.  If not, see <https://www.gnu.org/licenses/>.  */
+
+package org.gnu.emacs;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.Trace;
+
+/* Record of the time at which each phase of Emacs's startup is
+   reached, from the creation of the application object to the first
+   frame drawn.
+
+   Each phase is timestamped the first time `mark' is called for it,
+   and subsequent calls are ignored, so that `mark' can be placed in
+   functions called repeatedly (such as `swapBuffers') at the cost of
+   a single load.  When systrace or Perfetto is recording, each phase
+   is also reported as a trace section, and on Android 10 and later
+   the entire startup is reported as an asynchronous section.
+
+   The time taken by each of several tasks performed during startup is
+   also recorded, by calling `beginTask' before the task and `endTask'
+   after it.
+
+   The timestamps and durations are retrieved by Lisp through
+   `EmacsService.getStartupTimings'.  Keep the order of the phases in
+   sync with `android_startup_phases' in androidfns.c, and that of
+   the tasks with `android_startup_tasks'.  */
+
+public final class EmacsStartupTracer
+{
+  /* Startup phases.  */
+  public static final int APPLICATION_CREATE = 0;
+  public static final int SERVICE_CREATE     = 1;
+  public static final int THREAD_START       = 2;
+  public static final int INIT_EMACS         = 3;
+  public static final int FIRST_SWAP         = 4;
+  public static final int FIRST_DRAW         = 5;
+  public static final int PHASE_COUNT        = 6;
+
+  /* Tasks performed during startup.  */
+  public static final int LOCATE_APK         = 0;
+  public static final int LOCATE_DUMP        = 1;
+  public static final int DELETE_DUMPS       = 2;
+  public static final int PREFETCH_DUMP      = 3;
+  public static final int TASK_COUNT         = 4;
+
+  /* Names of each phase within trace sections.  */
+  private static final String[] PHASE_NAMES = {
+    "emacs:application-create",
+    "emacs:service-create",
+    "emacs:thread-start",
+    "emacs:init-emacs",
+    "emacs:first-swap",
+    "emacs:first-draw",
+  };
+
+  /* Names of each task within trace sections.  */
+  private static final String[] TASK_NAMES = {
+    "emacs:locate-apk",
+    "emacs:locate-dump",
+    "emacs:delete-dumps",
+    "emacs:prefetch-dump",
+  };
+
+  /* Name and cookie of the asynchronous section spanning the whole of
+     startup.  */
+  private static final String STARTUP_SECTION = "emacs:startup";
+  private static final int STARTUP_COOKIE = 0;
+
+  /* Time at which each phase was reached, in nanoseconds since boot,
+     or 0 if it has yet to be.  Modifications are synchronized on the
+     array.  */
+  private static final long[] timestamps;
+
+  /* Mask of phases that have been reached.  */
+  private static volatile int phasesReached;
+
+  /* Time taken by each task, in nanoseconds, or -1 if it has yet to
+     be completed.  Modifications are synchronized on the array.  */
+  private static final long[] durations;
+
+  static
+  {
+    int i;
+
+    timestamps = new long[PHASE_COUNT];
+    durations = new long[TASK_COUNT];
+
+    for (i = 0; i < TASK_COUNT; ++i)
+      durations[i] = -1;
+  };
+
+  /* Return the time since boot, in nanoseconds.  */
+
+  private static long
+  now ()
+  {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1)
+      return SystemClock.elapsedRealtimeNanos ();
+
+    return SystemClock.elapsedRealtime () * 1000000L;
+  }
+
+  /* Record that PHASE has been reached, unless it already has.  */
+
+  public static void
+  mark (int phase)
+  {
+    long time;
+
+    if ((phasesReached & (1 << phase)) != 0)
+      return;
+
+    time = now ();
+
+    synchronized (timestamps)
+      {
+	if ((phasesReached & (1 << phase)) != 0)
+	  return;
+
+	timestamps[phase] = time;
+	phasesReached |= 1 << phase;
+      }
+
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2)
+      return;
+
+    /* Report an instantaneous section marking the phase.  */
+    Trace.beginSection (PHASE_NAMES[phase]);
+    Trace.endSection ();
+
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q)
+      return;
+
+    if (phase == APPLICATION_CREATE)
+      Trace.beginAsyncSection (STARTUP_SECTION, STARTUP_COOKIE);
+    else if (phase == FIRST_DRAW)
+      Trace.endAsyncSection (STARTUP_SECTION, STARTUP_COOKIE);
+  }
+
+  /* Begin a trace section named NAME, recording the time taken by
+     some task performed during startup.  The section must be ended
+     with `endSection' on the same thread.  */
+
+  private static void
+  beginSection (String name)
+  {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2)
+      Trace.beginSection (name);
+  }
+
+  /* End the trace section most recently begun on this thread.  */
+
+  private static void
+  endSection ()
+  {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2)
+      Trace.endSection ();
+  }
+
+  /* Begin TASK, and return the time at which it began, which must be
+     passed to `endTask' once it is complete, on the same thread.  */
+
+  public static long
+  beginTask (int task)
+  {
+    beginSection (TASK_NAMES[task]);
+    return now ();
+  }
+
+  /* Record that TASK, begun at START, is complete.  */
+
+  public static void
+  endTask (int task, long start)
+  {
+    long time;
+
+    time = now ();
+    endSection ();
+
+    synchronized (durations)
+      {
+	durations[task] = time - start;
+      }
+  }
+
+  /* Return an array of the time elapsed between the creation of the
+     application and each phase, in nanoseconds, with -1 standing in
+     for phases yet to be reached, followed by the time taken by each
+     task, with -1 standing in for tasks yet to be completed.  */
+
+  public static long[]
+  getTimings ()
+  {
+    long[] timings;
+    int i;
+
+    timings = new long[PHASE_COUNT + TASK_COUNT];
+
+    synchronized (timestamps)
+      {
+	for (i = 0; i < PHASE_COUNT; ++i)
+	  {
+	    if ((phasesReached & (1 << i)) == 0
+		|| (phasesReached & (1 << APPLICATION_CREATE)) == 0)
+	      timings[i] = -1;
+	    else
+	      timings[i] = (timestamps[i]
+			    - timestamps[APPLICATION_CREATE]);
+	  }
+      }
+
+    synchronized (durations)
+      {
+	System.arraycopy (durations, 0, timings, PHASE_COUNT,
+			  TASK_COUNT);
+      }
+
+    return timings;
+  }
+};
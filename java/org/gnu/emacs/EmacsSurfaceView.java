@@ -218,6 +218,7 @@ else if (bitmap != null)
 	  }
 
 	canvas.drawBitmap (frontBuffer, 0f, 0f, uiThreadPaint);
+	EmacsStartupTracer.mark (EmacsStartupTracer.FIRST_DRAW);
       }
   }
 };
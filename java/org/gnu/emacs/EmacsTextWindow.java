@@ -0,0 +1,195 @@
+/* Communication module for Android terminals.  -*- c-file-style: "GNU" -*-
+
+Copyright (C) 2024 Free Software Foundation, Inc.
+
+This file is part of GNU Emacs.
+
+GNU Emacs is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or (at
+your option) any later version.
+
+GNU Emacs is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with GNU Emacs.  If not, see <https://www.gnu.org/licenses/>.  */
+
+package org.gnu.emacs;
+
+import android.view.inputmethod.SurroundingText;
+
+/* Snapshot of the text surrounding point in a window, with which
+   queries from input methods are answered without waiting for the
+   Emacs thread.
+
+   Emacs sends a new snapshot each time it reports the selection to
+   the input method (see `android_update_selection'), consisting of
+   the text around point, the selection and the composing region at
+   that time.  If the text of the buffer changes without point
+   moving, the snapshot is discarded after redisplay, and a new one
+   is sent after the next redisplay once an input method asks Emacs
+   for text (see `android_refresh_text_window').  Each snapshot is tagged with the number of the last edit it
+   reflects and the input connection generation during which it was
+   taken; it is disregarded if the user or the input method has since
+   performed another edit, or the input connection has since been
+   reset.
+
+   All positions are relative to the start of the conversion field,
+   as they are in queries issued to the Emacs thread.  */
+
+public final class EmacsTextWindow
+{
+  /* The text around point.  */
+  public final String text;
+
+  /* The position of the first character in that text.  */
+  public final int offset;
+
+  /* The start and end of the selection.  */
+  public final int selectionStart, selectionEnd;
+
+  /* The start and end of the composing region, or -1.  */
+  public final int composingStart, composingEnd;
+
+  /* The number of the last edit reflected in this snapshot.  */
+  public final long counter;
+
+  /* The value of the view's `icGeneration' when this snapshot was
+     taken.  */
+  public final long generation;
+
+  public
+  EmacsTextWindow (String text, int offset, int selectionStart,
+		   int selectionEnd, int composingStart,
+		   int composingEnd, long counter, long generation)
+  {
+    this.text = text;
+    this.offset = offset;
+    this.selectionStart = selectionStart;
+    this.selectionEnd = selectionEnd;
+    this.composingStart = composingStart;
+    this.composingEnd = composingEnd;
+    this.counter = counter;
+    this.generation = generation;
+  }
+
+  /* Return whether this snapshot reflects the state of VIEW's buffer
+     at present.  This must be called from the UI thread, whence edits
+     are sent to Emacs.  */
+
+  public boolean
+  isCurrent (EmacsView view)
+  {
+    return (generation == view.icGeneration
+	    && counter == EmacsNative.getEditCounter ());
+  }
+
+
+
+  /* Return LENGTH characters of text before the selection, or NULL if
+     that text lies outside this snapshot.  */
+
+  public String
+  getTextBeforeCursor (int length)
+  {
+    int start, end;
+
+    end = selectionStart - offset;
+
+    if (length < 0 || end < 0 || end > text.length ())
+      return null;
+
+    start = end - length;
+
+    /* If the snapshot begins at the start of the field, there is no
+       more text to return.  */
+
+    if (start < 0)
+      {
+	if (offset != 0)
+	  return null;
+
+	start = 0;
+      }
+
+    return text.substring (start, end);
+  }
+
+  /* Return LENGTH characters of text after the selection, or NULL if
+     that text lies outside this snapshot.  */
+
+  public String
+  getTextAfterCursor (int length)
+  {
+    int start, end;
+
+    start = selectionEnd - offset;
+
+    if (length < 0 || start < 0 || start > text.length ())
+      return null;
+
+    /* The snapshot says nothing about whether text follows it, so
+       requests extending past its end must be answered by Emacs.  */
+
+    end = start + length;
+
+    if (end < start || end > text.length ())
+      return null;
+
+    return text.substring (start, end);
+  }
+
+  /* Return the text within the selection, the empty string if there is
+     no selection, or NULL if it lies outside this snapshot.  */
+
+  public String
+  getSelectedText ()
+  {
+    int start, end;
+
+    start = selectionStart - offset;
+    end = selectionEnd - offset;
+
+    if (start < 0 || end > text.length ())
+      return null;
+
+    return text.substring (start, end);
+  }
+
+  /* Return a SurroundingText object describing BEFORELENGTH
+     characters before the selection, the selection itself, and
+     AFTERLENGTH characters after it, or NULL if that text lies outside
+     this snapshot.  */
+
+  public SurroundingText
+  getSurroundingText (int beforeLength, int afterLength)
+  {
+    int start, end;
+
+    if (beforeLength < 0 || afterLength < 0)
+      return null;
+
+    start = selectionStart - offset - beforeLength;
+    end = selectionEnd - offset + afterLength;
+
+    if (start < 0)
+      {
+	if (offset != 0)
+	  return null;
+
+	start = 0;
+      }
+
+    if (end < 0 || end > text.length ()
+	|| selectionStart - offset < 0)
+      return null;
+
+    return new SurroundingText (text.substring (start, end),
+				selectionStart - offset - start,
+				selectionEnd - offset - start,
+				offset + start);
+  }
+};
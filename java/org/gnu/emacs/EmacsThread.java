@@ -50,6 +50,8 @@ public final class EmacsThread extends Thread
   {
     String args[];
 
+    EmacsStartupTracer.mark (EmacsStartupTracer.THREAD_START);
+
     if (extraStartupArguments == null)
       args = new String[] { "libandroid-emacs.so", };
     else
@@ -65,6 +67,7 @@ public final class EmacsThread extends Thread
 
     /* Run the native code now.  */
     Log.d (TAG, "run: " + Arrays.toString (args));
+    EmacsStartupTracer.mark (EmacsStartupTracer.INIT_EMACS);
     EmacsNative.initEmacs (args, EmacsApplication.dumpFileName);
   }
 };
@@ -0,0 +1,292 @@
+/* Communication module for Android terminals.  -*- c-file-style: "GNU" -*-
+
+Copyright (C) 2024 Free Software Foundation, Inc.
+
+This file is part of GNU Emacs.
+
+GNU Emacs is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or (at
+your option) any later version.
+
+GNU Emacs is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with GNU Emacs.  If not, see <https://www.gnu.org/licenses/>.  */
+
+package org.gnu.emacs;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import android.os.CancellationSignal;
+
+/* Cache of downscaled previews of image files, from which the
+   documents provider serves thumbnails.
+
+   Each preview is saved within a directory of its own in the cache
+   directory, under a name derived from the name and modification time
+   of the image and the size requested, so that modifying the image
+   invalidates its previews.  Previews are decoded with an
+   `inSampleSize' that reduces the image to no less than the requested
+   size, and the least recently used previews are deleted once their
+   total size exceeds MAX_BYTES.  */
+
+public final class EmacsThumbnailCache
+{
+  /* Maximum total size of the previews retained.  */
+  private static final long MAX_BYTES = 16 * 1024 * 1024;
+
+  /* Smallest preview size that will be generated.  */
+  private static final int MIN_SIZE = 64;
+
+  /* The directory holding previews.  */
+  private final File directory;
+
+  /* Map between the names of files in that directory and their sizes,
+     in order of access.  NULL until the directory is first read.  */
+  private LinkedHashMap<String, Long> entries;
+
+  /* Total size of the files in ENTRIES.  */
+  private long totalBytes;
+
+  public
+  EmacsThumbnailCache (File directory)
+  {
+    this.directory = directory;
+  }
+
+  /* Read the contents of the cache directory into `entries', ordering
+     them by modification time.  */
+
+  private void
+  loadEntries ()
+  {
+    File[] files;
+
+    entries = new LinkedHashMap<String, Long> (16, 0.75f, true);
+    totalBytes = 0;
+
+    if (!directory.isDirectory () && !directory.mkdirs ())
+      return;
+
+    files = directory.listFiles ();
+
+    if (files == null)
+      return;
+
+    Arrays.sort (files, new Comparator<File> () {
+	@Override
+	public int
+	compare (File a, File b)
+	{
+	  return Long.compare (a.lastModified (), b.lastModified ());
+	}
+      });
+
+    for (File file : files)
+      {
+	entries.put (file.getName (), file.length ());
+	totalBytes += file.length ();
+      }
+  }
+
+  /* Return the name of the preview of FILE at the size SIZE.  */
+
+  private static String
+  getKey (File file, int size)
+  {
+    MessageDigest digest;
+    StringBuilder builder;
+    byte[] hash;
+
+    try
+      {
+	digest = MessageDigest.getInstance ("SHA-1");
+      }
+    catch (NoSuchAlgorithmException e)
+      {
+	throw new RuntimeException (e);
+      }
+
+    digest.update (file.getAbsolutePath ().getBytes ());
+    hash = digest.digest ();
+    builder = new StringBuilder ();
+
+    for (byte b : hash)
+      builder.append (String.format ("%02x", b & 0xff));
+
+    builder.append ('-');
+    builder.append (file.lastModified ());
+    builder.append ('-');
+    builder.append (size);
+    return builder.toString ();
+  }
+
+  /* Delete the least recently used previews until their total size no
+     longer exceeds MAX_BYTES.  */
+
+  private void
+  trim ()
+  {
+    Iterator<Map.Entry<String, Long>> iter;
+    Map.Entry<String, Long> entry;
+
+    iter = entries.entrySet ().iterator ();
+
+    while (totalBytes > MAX_BYTES && iter.hasNext ())
+      {
+	entry = iter.next ();
+	new File (directory, entry.getKey ()).delete ();
+	totalBytes -= entry.getValue ();
+	iter.remove ();
+      }
+  }
+
+  /* Return a file holding a preview of the image FILE no smaller than
+     WIDTH by HEIGHT, generating it if necessary.  SIGNAL, if non-NULL,
+     is a cancellation signal that is checked before the image is
+     decoded.
+
+     Signal FileNotFoundException if FILE cannot be decoded.  */
+
+  public File
+  getThumbnail (File file, int width, int height,
+		CancellationSignal signal)
+    throws FileNotFoundException
+  {
+    BitmapFactory.Options options;
+    Bitmap bitmap;
+    Bitmap.CompressFormat format;
+    FileOutputStream stream;
+    File thumbnail, temp;
+    String key;
+    int size;
+
+    /* Round the requested size up to a power of two, so that requests
+       for slightly different sizes share previews.  */
+    size = Math.max (MIN_SIZE, Math.max (width, height));
+    size = Integer.highestOneBit (size - 1) << 1;
+    key = getKey (file, size);
+
+    synchronized (this)
+      {
+	if (entries == null)
+	  loadEntries ();
+
+	thumbnail = new File (directory, key);
+
+	if (entries.get (key) != null)
+	  {
+	    if (thumbnail.exists ())
+	      {
+		thumbnail.setLastModified (System.currentTimeMillis ());
+		return thumbnail;
+	      }
+
+	    /* The preview was deleted behind the cache's back.  */
+	    totalBytes -= entries.remove (key);
+	  }
+      }
+
+    if (signal != null)
+      signal.throwIfCanceled ();
+
+    /* Read the dimensions of the image, then compute the largest
+       power of two by which it can be scaled without falling below the
+       requested size.  */
+
+    options = new BitmapFactory.Options ();
+    options.inJustDecodeBounds = true;
+    BitmapFactory.decodeFile (file.getAbsolutePath (), options);
+
+    if (options.outWidth <= 0 || options.outHeight <= 0)
+      throw new FileNotFoundException ("unable to decode image");
+
+    options.inSampleSize = 1;
+
+    while (options.outWidth / (options.inSampleSize * 2) >= size
+	   && options.outHeight / (options.inSampleSize * 2) >= size)
+      options.inSampleSize *= 2;
+
+    options.inJustDecodeBounds = false;
+    bitmap = BitmapFactory.decodeFile (file.getAbsolutePath (), options);
+
+    if (bitmap == null)
+      throw new FileNotFoundException ("unable to decode image");
+
+    /* Write the preview to a temporary file first, lest a concurrent
+       request read it before it is complete.  */
+
+    format = (bitmap.hasAlpha ()
+	      ? Bitmap.CompressFormat.PNG
+	      : Bitmap.CompressFormat.JPEG);
+    temp = null;
+    stream = null;
+
+    try
+      {
+	temp = File.createTempFile (key, ".tmp", directory);
+	stream = new FileOutputStream (temp);
+
+	if (!bitmap.compress (format, 85, stream))
+	  throw new FileNotFoundException ("unable to compress preview");
+      }
+    catch (IOException e)
+      {
+	if (temp != null)
+	  temp.delete ();
+
+	throw new FileNotFoundException (e.toString ());
+      }
+    finally
+      {
+	bitmap.recycle ();
+
+	try
+	  {
+	    if (stream != null)
+	      stream.close ();
+	  }
+	catch (IOException e)
+	  {
+
+	  }
+      }
+
+    synchronized (this)
+      {
+	if (!temp.renameTo (thumbnail))
+	  {
+	    temp.delete ();
+	    throw new FileNotFoundException ("unable to save preview");
+	  }
+
+	if (entries.get (key) == null)
+	  {
+	    entries.put (key, thumbnail.length ());
+	    totalBytes += thumbnail.length ();
+	    trim ();
+	  }
+      }
+
+    return thumbnail;
+  }
+};
@@ -68,6 +68,11 @@ public final class EmacsView extends ViewGroup
   /* The buffer bitmap.  */
   public Bitmap bitmap;
 
+  /* The buffer bitmap of an override-redirect window at the time it
+     was last detached, which is yet to be returned to
+     EmacsPopupPool.  */
+  private Bitmap detachedBitmap;
+
   /* The associated canvases.  */
   public Canvas canvas;
 
@@ -124,6 +129,21 @@ public final class EmacsView extends ViewGroup
   /* The number of calls to `recetIC' that have taken place.  */
   public volatile long icGeneration;
 
+  /* Snapshot of the text around point last sent by Emacs, or NULL.
+     See EmacsTextWindow for more details.  */
+  public volatile EmacsTextWindow textWindow;
+
+  /* Object through which selection and extracted text updates are
+     reported to the input method.  */
+  public final EmacsInputUpdater inputUpdater;
+
+  /* The position of this view within its window and on screen as of
+     the last layout, in that order, or NULL if this view has not been
+     laid out since it was last attached, or its window might have
+     moved since.  The array is replaced rather than modified when the
+     position changes.  */
+  private volatile int[] location;
+
   public
   EmacsView (EmacsWindow window)
   {
@@ -150,16 +170,38 @@ public final class EmacsView extends ViewGroup
     context = getContext ();
     tem = context.getSystemService (Context.INPUT_METHOD_SERVICE);
     imManager = (InputMethodManager) tem;
+    inputUpdater = new EmacsInputUpdater (this);
 
     /* Add this view as its own global layout listener.  */
     getViewTreeObserver ().addOnGlobalLayoutListener (this);
   }
 
+  /* Return the buffer bitmap saved when this view was last detached
+     to EmacsPopupPool, if it has yet to be.  The Emacs thread might
+     still be drawing to a bitmap when it is detached, but not once it
+     requests another, or destroys the window, so this must only be
+     called from the Emacs thread.  */
+
+  public synchronized void
+  releaseDetachedBitmap ()
+  {
+    if (detachedBitmap != null)
+      {
+	EmacsPopupPool.release (detachedBitmap);
+	detachedBitmap = null;
+      }
+  }
+
   private void
   handleDirtyBitmap ()
   {
     Bitmap oldBitmap;
     int measuredWidth, measuredHeight;
+    boolean isPopup;
+
+    /* Return any bitmap saved upon detachment to the pool first, so
+       that it can be reused below.  */
+    releaseDetachedBitmap ();
 
     /* Load measuredWidth and measuredHeight.  */
     measuredWidth = this.measuredWidth;
@@ -185,11 +227,20 @@ public final class EmacsView extends ViewGroup
     /* Save the old bitmap.  */
     oldBitmap = bitmap;
 
-    /* Recreate the back buffer bitmap.  */
-    bitmap
-      = Bitmap.createBitmap (measuredWidth,
-			     measuredHeight,
-			     Bitmap.Config.ARGB_8888);
+    /* Recreate the back buffer bitmap.  Popups reuse bitmaps released
+       by other popups where possible.  */
+    isPopup = window.isOverrideRedirect ();
+    bitmap = null;
+
+    if (isPopup)
+      bitmap = EmacsPopupPool.take (measuredWidth, measuredHeight);
+
+    if (bitmap == null)
+      bitmap
+	= Bitmap.createBitmap (measuredWidth,
+			       measuredHeight,
+			       Bitmap.Config.ARGB_8888);
+
     bitmap.eraseColor (window.background | 0xff000000);
 
     /* And canvases.  */
@@ -207,9 +258,22 @@ public final class EmacsView extends ViewGroup
        continue to be referenced by canvas or JNI objects returned by
        getBitmap or getCanvas, but the underlying storage will not be
        released until such references disappear.  See
-       BitmapWrapper::freePixels in hwui/jni/Bitmap.cpp.  */
-    if (oldBitmap != null)
-      oldBitmap.recycle ();
+       BitmapWrapper::freePixels in hwui/jni/Bitmap.cpp.
+
+       This function is only called from the Emacs thread, so the old
+       bitmap of a popup can be retained for reuse without fear that
+       it is still being drawn to.  */
+
+    if (oldBitmap == null)
+      return;
+
+    if (isPopup)
+      {
+	EmacsPopupPool.release (oldBitmap);
+	return;
+      }
+
+    oldBitmap.recycle ();
 
     /* Some Android versions still refuse to release the bitmap until
        the next GC.  */
@@ -250,6 +314,8 @@ public final class EmacsView extends ViewGroup
     unswapped = true;
 
     /* Update clip rectangles if necessary.  */
+    gc.updateClipMask ();
+
     if (gc.clipRectID != lastClipSerial)
       {
 	canvas.restore ();
@@ -261,6 +327,9 @@ public final class EmacsView extends ViewGroup
 	      canvas.clipRect (gc.real_clip_rects[i]);
 	  }
 
+	if (gc.clip_mask != null)
+	  canvas.clipPath (gc.getClipMaskPath ());
+
 	lastClipSerial = gc.clipRectID;
       }
 
@@ -490,6 +559,8 @@ else if (child.getVisibility () != GONE)
 	return;
       }
 
+    EmacsStartupTracer.mark (EmacsStartupTracer.FIRST_SWAP);
+
     /* And extract and clear the damage region.  */
 
     damageRect = damageRegion.getBounds ();
@@ -756,16 +827,33 @@ else if (child.getVisibility () != GONE)
     isAttachedToWindow = false;
     bitmap = null;
     canvas = null;
+    location = null;
 
     surfaceView.setBitmap (null, null);
 
-    /* Recycle the bitmap and call GC.  */
+    /* Override-redirect windows are detached each time they are
+       unmapped; retain their bitmaps for the next popup to be
+       displayed.  The Emacs thread might still be drawing to the
+       bitmap, which must not be handed to another popup till it is
+       done, so save it until that thread calls
+       `releaseDetachedBitmap'.  That will never happen if the window
+       has been destroyed, so recycle the bitmap instead in that
+       case.  */
+
+    if (savedBitmap != null && window.isOverrideRedirect ()
+	&& !window.isDestroyed ())
+      detachedBitmap = savedBitmap;
+    else
+      {
+	/* Recycle the bitmap and call GC.  */
+
+	if (savedBitmap != null)
+	  savedBitmap.recycle ();
 
-    if (savedBitmap != null)
-      savedBitmap.recycle ();
+	/* Collect the bitmap storage; it could be large.  */
+	Runtime.getRuntime ().gc ();
+      }
 
-    /* Collect the bitmap storage; it could be large.  */
-    Runtime.getRuntime ().gc ();
     super.onDetachedFromWindow ();
   }
 
@@ -927,19 +1015,92 @@ else if (child.getVisibility () != GONE)
     return icMode;
   }
 
+  /* Return the position of this view within its window and on
+     screen, in the form of `location', and record it there if this
+     view is attached, so that it can be read from the Emacs thread
+     without waiting for the UI thread.  Call only from the UI
+     thread.  */
+
+  public int[]
+  refreshLocation ()
+  {
+    int[] locations, screenLocations, newLocation;
+
+    locations = new int[2];
+    getLocationInWindow (locations);
+    screenLocations = new int[2];
+    getLocationOnScreen (screenLocations);
+    newLocation = new int[] { locations[0], locations[1],
+			      screenLocations[0], screenLocations[1] };
+
+    if (isAttachedToWindow && !Arrays.equals (location, newLocation))
+      location = newLocation;
+
+    return newLocation;
+  }
+
   @Override
   public void
   onGlobalLayout ()
   {
-    int[] locations;
+    int[] newLocation;
 
     /* Get the absolute offset of this view and specify its left and
        top position in subsequent ConfigureNotify events.  */
 
-    locations = new int[2];
-    getLocationInWindow (locations);
-    window.notifyContentRectPosition (locations[0],
-				      locations[1]);
+    newLocation = refreshLocation ();
+    window.notifyContentRectPosition (newLocation[0],
+				      newLocation[1]);
+  }
+
+  @Override
+  public void
+  onWindowFocusChanged (boolean hasWindowFocus)
+  {
+    /* The window might have been moved without being laid out anew,
+       as when it is dragged in multi-window mode.  Discard its
+       recorded position, which will be obtained from the UI thread
+       when next required.  */
+    location = null;
+    super.onWindowFocusChanged (hasWindowFocus);
+  }
+
+  /* Save the position of this view within its window in COORDINATES,
+     as of the last layout.  Value is false if that position is not
+     known, in which case COORDINATES is left untouched.  May be called
+     from any thread.  */
+
+  public boolean
+  getCachedLocationInWindow (int[] coordinates)
+  {
+    int[] locations;
+
+    locations = location;
+
+    if (locations == null)
+      return false;
+
+    coordinates[0] = locations[0];
+    coordinates[1] = locations[1];
+    return true;
+  }
+
+  /* Like `getCachedLocationInWindow', but save the position of this
+     view on screen.  */
+
+  public boolean
+  getCachedLocationOnScreen (int[] coordinates)
+  {
+    int[] locations;
+
+    locations = location;
+
+    if (locations == null)
+      return false;
+
+    coordinates[0] = locations[2];
+    coordinates[1] = locations[3];
+    return true;
   }
 
   @Override
@@ -948,6 +1109,10 @@ else if (child.getVisibility () != GONE)
   {
     WindowInsets rootWindowInsets;
 
+    /* Changes to the window insets, such as the display of the input
+       method, can move this view before it is laid out again.  */
+    location = null;
+
     /* This function is called when window insets change, which
        encompasses input method visibility changes under Android 30
        and later.  If a toplevel view is focused and
@@ -22,10 +22,8 @@
 import java.lang.IllegalStateException;
 
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ListIterator;
-import java.util.Map;
 
 import java.util.concurrent.Callable;
 import java.util.concurrent.FutureTask;
@@ -53,7 +51,6 @@
 import android.view.ViewManager;
 import android.view.WindowManager;
 
-import android.util.SparseArray;
 import android.util.Log;
 
 import android.os.Build;
@@ -77,28 +74,6 @@ public final class EmacsWindow extends EmacsHandleObject
   /* Whether any windows have yet been created in this session.  */
   private static boolean initialWindowCreated;
 
-  private static class Coordinate
-  {
-    /* Integral coordinate.  */
-    int x, y;
-
-    /* Button associated with the coordinate, or 0 if it is a touch
-       event.  */
-    int button;
-
-    /* Pointer ID associated with the coordinate.  */
-    int id;
-
-    public
-    Coordinate (int x, int y, int button, int id)
-    {
-      this.x = x;
-      this.y = y;
-      this.button = button;
-      this.id = id;
-    }
-  };
-
   /* The view associated with the window.  */
   public EmacsView view;
 
@@ -114,9 +89,22 @@ public final class EmacsWindow extends EmacsHandleObject
      Synchronize access to this list with itself.  */
   public ArrayList<EmacsWindow> children;
 
-  /* Map between pointer identifiers and last known position.  Used to
-     compute which pointer changed upon a touch event.  */
-  private SparseArray<Coordinate> pointerMap;
+  /* Number of pointer IDs that can be tracked.  Android assigns IDs
+     between 0 and 31.  */
+  private static final int MAX_POINTERS = 32;
+
+  /* Table of pressed pointers, indexed by pointer ID.  Used to compute
+     which pointers changed upon a touch event.
+
+     pointerX and pointerY hold the last known position of each
+     pointer, and pointerButton the button associated with it, or 0 if
+     it is a touch.  pointerDown is set while the pointer is
+     pressed.  */
+  private final int[] pointerX, pointerY, pointerButton;
+  private final boolean[] pointerDown;
+
+  /* Pointer motion yet to be sent to Emacs.  */
+  private EmacsMotionBatch motionBatch;
 
   /* The window consumer currently attached, if it exists.  */
   private EmacsWindowManager.WindowConsumer attached;
@@ -148,9 +136,9 @@ public final class EmacsWindow extends EmacsHandleObject
      presses of such key.  */
   private long lastQuitKeyRelease;
 
-  /* Linked list of character strings which were recently sent as
+  /* Table of character strings which were recently sent as
      events.  */
-  public LinkedHashMap<Integer, String> eventStrings;
+  public EmacsEventStrings eventStrings;
 
   /* Whether or not this window is fullscreen.  */
   public boolean fullscreen;
@@ -185,13 +173,15 @@ public final class EmacsWindow extends EmacsHandleObject
   EmacsWindow (final EmacsWindow parent, int x, int y,
 	       int width, int height, boolean overrideRedirect)
   {
+    Callable<Void> create;
+
     rect = new Rect (x, y, x + width, y + height);
-    pointerMap = new SparseArray<Coordinate> ();
+    pointerX = new int[MAX_POINTERS];
+    pointerY = new int[MAX_POINTERS];
+    pointerButton = new int[MAX_POINTERS];
+    pointerDown = new boolean[MAX_POINTERS];
+    motionBatch = new EmacsMotionBatch (this);
 
-    /* Create the view from the context's UI thread.  The window is
-       unmapped, so the view is GONE.  */
-    view = EmacsService.SERVICE.getEmacsView (this, View.GONE,
-					      parent == null);
     this.parent = parent;
     this.overrideRedirect = overrideRedirect;
 
@@ -206,6 +196,31 @@ public final class EmacsWindow extends EmacsHandleObject
     /* Create the list of children.  */
     children = new ArrayList<EmacsWindow> ();
 
+    scratchGC = new EmacsGC ();
+
+    /* Create the table of input method-committed strings.  */
+    eventStrings = new EmacsEventStrings ();
+
+    dndXPosition = -1;
+    dndYPosition = -1;
+
+    /* Create the view from the context's UI thread.  The window is
+       unmapped, so the view is GONE.  As it might receive events
+       once attached to that of the parent, do so after every other
+       field is initialized.  */
+
+    create = new Callable<Void> () {
+	@Override
+	public Void
+	call ()
+	{
+	  view = EmacsService.SERVICE.createEmacsView (EmacsWindow.this,
+						       View.GONE,
+						       parent == null);
+	  return null;
+	}
+      };
+
     if (parent != null)
       {
 	synchronized (parent.children)
@@ -213,33 +228,21 @@ public final class EmacsWindow extends EmacsHandleObject
 	    parent.children.add (this);
 	  }
 
-        EmacsService.SERVICE.runOnUiThread (new Runnable () {
+	/* Attach the view to that of the parent in the same message
+	   as it is created, so that both cost a single round trip.  */
+
+	EmacsService.syncCallables (create, new Callable<Void> () {
 	    @Override
-	    public void
-	    run ()
+	    public Void
+	    call ()
 	    {
 	      parent.view.addView (view);
+	      return null;
 	    }
 	  });
       }
-
-    scratchGC = new EmacsGC ();
-
-    /* Create the map of input method-committed strings.  Keep at most
-       ten strings in the map.  */
-
-    eventStrings
-      = new LinkedHashMap<Integer, String> () {
-	  @Override
-	  protected boolean
-	  removeEldestEntry (Map.Entry<Integer, String> entry)
-	  {
-	    return size () > 10;
-	  }
-	};
-
-    dndXPosition = -1;
-    dndYPosition = -1;
+    else
+      EmacsService.syncCallables (create);
   }
 
   public void
@@ -306,6 +309,11 @@ public final class EmacsWindow extends EmacsHandleObject
       });
 
     super.destroyHandle ();
+
+    /* If the view was detached before the window was marked as
+       destroyed, its bitmap might still await return to the pool of
+       popup bitmaps.  */
+    view.releaseDetachedBitmap ();
   }
 
   public void
@@ -544,7 +552,7 @@ public final class EmacsWindow extends EmacsHandleObject
 
     isMapped = false;
 
-    view.post (new Runnable () {
+    EmacsService.SERVICE.runOnUiThread (new Runnable () {
 	@Override
 	public void
 	run ()
@@ -638,12 +646,6 @@ public final class EmacsWindow extends EmacsHandleObject
     return characters == null ? 0 : -1;
   }
 
-  public void
-  saveUnicodeString (int serial, String string)
-  {
-    eventStrings.put (serial, string);
-  }
-
 
 
   /* Return the modifier mask associated with the specified keyboard
@@ -684,7 +686,7 @@ public final class EmacsWindow extends EmacsHandleObject
   public boolean
   onKeyDown (int keyCode, KeyEvent event)
   {
-    int state, state_1, extra_ignored, unicode_char;
+    int state, state_1, extra_ignored, unicode_char, index;
     long serial;
     String characters;
 
@@ -746,19 +748,22 @@ public final class EmacsWindow extends EmacsHandleObject
 	&& unicode_char == 0)
       return false;
 
-    synchronized (eventStrings)
-      {
-	serial
-	  = EmacsNative.sendKeyPress (this.handle,
-				      event.getEventTime (),
-				      state, keyCode,
-				      unicode_char);
+    /* Save any string that is too long to be sent with the event
+       before sending it, lest Emacs look it up first.  */
 
-	characters = event.getCharacters ();
+    characters = event.getCharacters ();
+    index = -1;
 
-	if (characters != null && characters.length () > 1)
-	  saveUnicodeString ((int) serial, characters);
-      }
+    if (characters != null && characters.length () > 1)
+      index = eventStrings.beginSave (characters);
+
+    serial = EmacsNative.sendKeyPress (this.handle,
+				       event.getEventTime (),
+				       state, keyCode,
+				       unicode_char);
+
+    if (index != -1)
+      eventStrings.endSave (index, (int) serial);
 
     return true;
   }
@@ -891,9 +896,9 @@ else if (keyCode >= KeyEvent.KEYCODE_NUMPAD_0
      been released changes.  Emacs processes this event by comparing
      each of the coordinates within the event with its recollection of
      those contained within prior ACTION_DOWN and ACTION_MOVE events;
-     the pointer ID of the differing coordinate is then reported
-     within a touch or pointer motion event along with its new
-     position.
+     the pointer IDs of the differing coordinates are then reported
+     within touch or pointer motion events along with their new
+     positions, once per frame.
 
      The events described above are all sent for both touch and mouse
      click events.  Determining whether an ACTION_DOWN event is
@@ -1005,99 +1010,74 @@ else if (keyCode >= KeyEvent.KEYCODE_NUMPAD_0
     return whatButtonWasIt (event, true);
   }
 
-  /* Return the coordinate object associated with the specified
-     EVENT, or null if it is not known.  */
+  /* Record the pointer pressed at INDEX in EVENT in the pointer
+     table, and return its ID, or -1 if it cannot be tracked.  */
 
-  private Coordinate
-  figureChange (MotionEvent event)
+  private int
+  pointerPressed (MotionEvent event, int index)
   {
-    int i, truncatedX, truncatedY, pointerIndex, pointerID, count;
-    Coordinate coordinate;
+    int pointerID;
+
+    pointerID = event.getPointerId (index);
 
-    /* Initialize this variable now.  */
-    coordinate = null;
+    if (pointerID < 0 || pointerID >= MAX_POINTERS)
+      return -1;
+
+    pointerX[pointerID] = (int) event.getX (index);
+    pointerY[pointerID] = (int) event.getY (index);
+    pointerButton[pointerID] = buttonForEvent (event);
+    pointerDown[pointerID] = true;
+    return pointerID;
+  }
+
+  /* Remove the pointer released in EVENT at INDEX from the pointer
+     table, and return its ID, or -1 if it is not known.  Its last
+     position and button remain in the table until it is reused.  */
+
+  private int
+  pointerReleased (MotionEvent event, int index)
+  {
+    int pointerID;
 
+    pointerID = event.getPointerId (index);
+
+    if (pointerID < 0 || pointerID >= MAX_POINTERS
+	|| !pointerDown[pointerID])
+      return -1;
+
+    pointerDown[pointerID] = false;
+    return pointerID;
+  }
+
+  /* Return the ID of the pointer pressed or released by the specified
+     EVENT, or -1 if it is not known.  EVENT must not be an
+     ACTION_MOVE event.  */
+
+  private int
+  figureChange (MotionEvent event)
+  {
     switch (event.getActionMasked ())
       {
       case MotionEvent.ACTION_DOWN:
 	/* Primary pointer pressed with index 0.  */
-
-	pointerID = event.getPointerId (0);
-	coordinate = new Coordinate ((int) event.getX (0),
-				     (int) event.getY (0),
-				     buttonForEvent (event),
-				     pointerID);
-	pointerMap.put (pointerID, coordinate);
-	break;
+	return pointerPressed (event, 0);
 
       case MotionEvent.ACTION_UP:
       case MotionEvent.ACTION_CANCEL:
 	/* Primary pointer released with index 0.  */
-	pointerID = event.getPointerId (0);
-	coordinate = pointerMap.get (pointerID);
-	pointerMap.delete (pointerID);
-	break;
+	return pointerReleased (event, 0);
 
       case MotionEvent.ACTION_POINTER_DOWN:
 	/* New pointer.  Find the pointer ID from the index and place
-	   it in the map.  */
-	pointerIndex = event.getActionIndex ();
-	pointerID = event.getPointerId (pointerIndex);
-	coordinate = new Coordinate ((int) event.getX (pointerIndex),
-				     (int) event.getY (pointerIndex),
-				     buttonForEvent (event),
-				     pointerID);
-	pointerMap.put (pointerID, coordinate);
-	break;
+	   it in the table.  */
+	return pointerPressed (event, event.getActionIndex ());
 
       case MotionEvent.ACTION_POINTER_UP:
-	/* Pointer removed.  Remove it from the map.  */
-	pointerIndex = event.getActionIndex ();
-	pointerID = event.getPointerId (pointerIndex);
-	coordinate = pointerMap.get (pointerID);
-	pointerMap.delete (pointerID);
-	break;
-
-      default:
-
-	/* Loop through each pointer in the event.  */
-
-	count = event.getPointerCount ();
-	for (i = 0; i < count; ++i)
-	  {
-	    pointerID = event.getPointerId (i);
-
-	    /* Look up that pointer in the map.  */
-	    coordinate = pointerMap.get (pointerID);
-
-	    if (coordinate != null)
-	      {
-		/* See if coordinates have changed.  */
-		truncatedX = (int) event.getX (i);
-		truncatedY = (int) event.getY (i);
-
-		if (truncatedX != coordinate.x
-		    || truncatedY != coordinate.y)
-		  {
-		    /* The pointer changed.  Update the coordinate and
-		       break out of the loop.  */
-		    coordinate.x = truncatedX;
-		    coordinate.y = truncatedY;
-
-		    break;
-		  }
-	      }
-	  }
-
-	/* Set coordinate to NULL if the loop failed to find any
-	   matching pointer.  */
-
-	if (i == count)
-	  coordinate = null;
+	/* Pointer removed.  Remove it from the table.  */
+	return pointerReleased (event, event.getActionIndex ());
       }
 
-    /* Return the pointer ID.  */
-    return coordinate;
+    return -1;
   }
 
   /* Return the modifier mask associated with the specified motion
@@ -1125,6 +1105,71 @@ else if (keyCode >= KeyEvent.KEYCODE_NUMPAD_0
     return state;
   }
 
+  /* Record the motion of each pointer reported by the ACTION_MOVE
+     event EVENT in motionBatch, and arrange for it to be sent.
+
+     If every sample of motion is to be reported, each historical
+     sample within EVENT is recorded as well, pointer by pointer, and
+     in order of time.  */
+
+  private void
+  motionMove (MotionEvent event)
+  {
+    int i, h, x, y, count, historySize, pointerID;
+    long time;
+
+    count = event.getPointerCount ();
+    historySize = event.getHistorySize ();
+
+    /* Otherwise, only the current position of each pointer is of
+       interest.  */
+
+    for (h = (EmacsMotionBatch.recordHistory ? 0 : historySize);
+	 h <= historySize; ++h)
+      {
+	time = (h < historySize
+		? event.getHistoricalEventTime (h)
+		: event.getEventTime ());
+
+	for (i = 0; i < count; ++i)
+	  {
+	    pointerID = event.getPointerId (i);
+
+	    if (pointerID < 0 || pointerID >= MAX_POINTERS
+		|| !pointerDown[pointerID])
+	      continue;
+
+	    if (h < historySize)
+	      {
+		x = (int) event.getHistoricalX (i, h);
+		y = (int) event.getHistoricalY (i, h);
+	      }
+	    else
+	      {
+		x = (int) event.getX (i);
+		y = (int) event.getY (i);
+	      }
+
+	    /* See if coordinates have changed.  */
+
+	    if (x == pointerX[pointerID] && y == pointerY[pointerID])
+	      continue;
+
+	    pointerX[pointerID] = x;
+	    pointerY[pointerID] = y;
+
+	    if (pointerButton[pointerID] != 0)
+	      /* This pointer is tied to a mouse click, so report mouse
+		 motion.  */
+	      motionBatch.addMotion (x, y, time);
+	    else
+	      motionBatch.addTouch (pointerID, x, y, time);
+	  }
+      }
+
+    motionBatch.schedule ();
+  }
+
   /* Process a single ACTION_DOWN, ACTION_POINTER_DOWN, ACTION_UP,
      ACTION_POINTER_UP, ACTION_CANCEL, or ACTION_MOVE event.
 
@@ -1134,22 +1179,38 @@ else if (keyCode >= KeyEvent.KEYCODE_NUMPAD_0
   private void
   motionEvent (MotionEvent event)
   {
-    Coordinate coordinate;
-    int modifiers;
+    int pointerID, x, y, button, modifiers;
     long time;
 
+    if (event.getActionMasked () == MotionEvent.ACTION_MOVE)
+      {
+	/* Motion is sent to Emacs once per frame.  */
+	motionMove (event);
+
+	if (Build.VERSION.SDK_INT
+	    >= Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+	  lastButtonState = event.getButtonState ();
+
+	return;
+      }
+
+    /* Send pending motion before any tool is pressed or released.  */
+    motionBatch.flush ();
+
     /* Find data associated with this event's pointer.  Namely, its
-       current location, whether or not a change has taken place, and
-       whether or not it is a button event.  */
+       current location and whether or not it is a button event.  */
 
-    coordinate = figureChange (event);
+    pointerID = figureChange (event);
 
-    if (coordinate == null)
+    if (pointerID == -1)
       return;
 
+    x = pointerX[pointerID];
+    y = pointerY[pointerID];
+    button = pointerButton[pointerID];
     time = event.getEventTime ();
 
-    if (coordinate.button != 0)
+    if (button != 0)
       {
 	/* This event is tied to a mouse click, so report mouse motion
 	   and button events.  */
@@ -1160,22 +1221,15 @@ else if (keyCode >= KeyEvent.KEYCODE_NUMPAD_0
 	  {
 	  case MotionEvent.ACTION_POINTER_DOWN:
 	  case MotionEvent.ACTION_DOWN:
-	    EmacsNative.sendButtonPress (this.handle, coordinate.x,
-					 coordinate.y, time, modifiers,
-					 coordinate.button);
+	    EmacsNative.sendButtonPress (this.handle, x, y, time,
+					 modifiers, button);
 	    break;
 
 	  case MotionEvent.ACTION_POINTER_UP:
 	  case MotionEvent.ACTION_UP:
 	  case MotionEvent.ACTION_CANCEL:
-	    EmacsNative.sendButtonRelease (this.handle, coordinate.x,
-					   coordinate.y, time, modifiers,
-					   coordinate.button);
-	    break;
-
-	  case MotionEvent.ACTION_MOVE:
-	    EmacsNative.sendMotionNotify (this.handle, coordinate.x,
-					  coordinate.y, time);
+	    EmacsNative.sendButtonRelease (this.handle, x, y, time,
+					   modifiers, button);
 	    break;
 	  }
       }
@@ -1189,33 +1243,23 @@ else if (keyCode >= KeyEvent.KEYCODE_NUMPAD_0
 	  case MotionEvent.ACTION_DOWN:
 	  case MotionEvent.ACTION_POINTER_DOWN:
 	    /* Touch down event.  */
-	    EmacsNative.sendTouchDown (this.handle, coordinate.x,
-				       coordinate.y, time,
-				       coordinate.id, 0);
+	    EmacsNative.sendTouchDown (this.handle, x, y, time,
+				       pointerID, 0);
 	    break;
 
 	  case MotionEvent.ACTION_UP:
 	  case MotionEvent.ACTION_POINTER_UP:
 	    /* Touch up event.  */
-	    EmacsNative.sendTouchUp (this.handle, coordinate.x,
-				     coordinate.y, time,
-				     coordinate.id, 0);
+	    EmacsNative.sendTouchUp (this.handle, x, y, time,
+				     pointerID, 0);
 	    break;
 
 	  case MotionEvent.ACTION_CANCEL:
 	    /* Touch sequence cancellation event.  */
-	    EmacsNative.sendTouchUp (this.handle, coordinate.x,
-				     coordinate.y, time,
-				     coordinate.id,
+	    EmacsNative.sendTouchUp (this.handle, x, y, time,
+				     pointerID,
 				     1 /* ANDROID_TOUCH_SEQUENCE_CANCELED */);
 	    break;
-
-	  case MotionEvent.ACTION_MOVE:
-	    /* Pointer motion event.  */
-	    EmacsNative.sendTouchMove (this.handle, coordinate.x,
-				       coordinate.y, time,
-				       coordinate.id, 0);
-	    break;
 	  }
       }
 
@@ -1576,6 +1620,14 @@ else if (EmacsWindow.this.isMapped)
     return dontFocusOnMap;
   }
 
+  /* Return whether this is an override-redirect window.  */
+
+  public boolean
+  isOverrideRedirect ()
+  {
+    return overrideRedirect;
+  }
+
   public void
   setWmName (final String wmName)
   {
@@ -1666,14 +1718,7 @@ else if (EmacsWindow.this.isMapped)
   public String
   lookupString (int eventSerial)
   {
-    String any;
-
-    synchronized (eventStrings)
-      {
-	any = eventStrings.remove (eventSerial);
-      }
-
-    return any;
+    return eventStrings.lookup (eventSerial);
   }
 
   public void
@@ -1705,7 +1750,7 @@ else if (EmacsWindow.this.isMapped)
     /* Don't post this message if pointer icons aren't supported.  */
 
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N)
-      view.post (new Runnable () {
+      EmacsService.SERVICE.runOnUiThread (new Runnable () {
 	  @Override
 	  public void
 	  run ()
@@ -1944,7 +1989,7 @@ else if (type.equals (ClipDescription.MIMETYPE_TEXT_URILIST))
     if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB)
       return;
 
-    view.post (new Runnable () {
+    EmacsService.SERVICE.runOnUiThread (new Runnable () {
 	@Override
 	public void
 	run ()
@@ -100,11 +100,19 @@ class are relevant on all versions of Android:
   /* List of currently attached windows.  */
   public List<EmacsWindow> windows;
 
+  /* Whether the list of tasks might have diverged from the list of
+     windows, so that `pruneWindows' must compare the two.  */
+  private boolean reconcileTasks;
+
   public
   EmacsWindowManager ()
   {
     consumers = new ArrayList<WindowConsumer> ();
     windows = new ArrayList<EmacsWindow> ();
+
+    /* Tasks might survive from an earlier instance of this
+       process.  */
+    reconcileTasks = true;
   }
 
 
@@ -125,10 +133,35 @@ class are relevant on all versions of Android:
 
 
 
+  /* Return whether a registered window is bound to the task with the
+     token TOKEN.  */
+
+  private boolean
+  isTokenBound (long token)
+  {
+    for (EmacsWindow window : windows)
+      {
+	if (window.attachmentToken == token)
+	  return true;
+      }
+
+    return false;
+  }
+
   public synchronized void
   registerWindowConsumer (WindowConsumer consumer)
   {
+    long token;
+
     consumers.add (consumer);
+
+    /* If CONSUMER was started in a task whose window has been
+       deleted, that task must be removed.  */
+    token = consumer.getAttachmentToken ();
+
+    if (token > 0 && !isTokenBound (token))
+      reconcileTasks = true;
+
     pruneWindows ();
 
     for (EmacsWindow window : windows)
@@ -267,6 +300,11 @@ && isWindowEligible (consumer, window))
 	    && (!(consumer instanceof EmacsMultitaskActivity)
 		|| Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP))
 	  window.onActivityDetached ();
+
+	/* Whether or not the activity is finishing, its task might
+	   or might not remain.  */
+	if (window.attachmentToken > 0)
+	  reconcileTasks = true;
       }
 
     pruneWindows ();
@@ -277,13 +315,19 @@ && isWindowEligible (consumer, window))
   detachWindow (EmacsWindow window)
   {
     WindowConsumer consumer;
+    boolean registered;
+
+    /* The task of a toplevel window that is detached must be
+       removed.  */
+    if (window.attachmentToken > 0)
+      reconcileTasks = true;
 
     /* Reset window management state.  */
     window.previouslyAttached = false;
     window.attachmentToken = 0;
 
     /* Remove WINDOW from the list of active windows.  */
-    windows.remove (window);
+    registered = windows.remove (window);
 
     if ((consumer = window.getAttachedConsumer ()) != null)
       {
@@ -291,7 +335,10 @@ && isWindowEligible (consumer, window))
 	consumer.destroy ();
       }
 
-    pruneWindows ();
+    /* Windows that were never registered, such as child windows and
+       override-redirect windows, have no tasks of their own.  */
+    if (registered)
+      pruneWindows ();
   }
 
   public void
@@ -351,7 +398,19 @@ && isWindowEligible (consumer, window))
   /* Iterate over each of Emacs's tasks and remove remaining registered
      windows whose tasks no longer exist.  This function should be
      called upon any event that could plausibly indicate changes in the
-     task list or as to window management.  */
+     task list or as to window management.
+
+     Listing the tasks is a call into the system and is not cheap, so
+     it is only done if `reconcileTasks' is set, by events after which
+     a task might exist without a window or a window without a task.
+     Such events are the destruction of an activity bound to a
+     toplevel window, the deletion of such a window, and the creation
+     of an activity in a task whose window no longer exists.
+
+     The system does not notify Emacs when a task whose activity has
+     already been destroyed is removed from the list of recent tasks.
+     As long as any window is in this situation, every call
+     compares the lists.  */
 
   private synchronized void
   pruneWindows ()
@@ -362,7 +421,8 @@ && isWindowEligible (consumer, window))
     boolean set;
 
     if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP
-	|| EmacsService.SERVICE == null)
+	|| EmacsService.SERVICE == null
+	|| !reconcileTasks)
       return;
 
     if (activityManager == null)
@@ -403,6 +463,8 @@ && isWindowEligible (consumer, window))
 
     /* Now remove toplevel windows without activity tasks.  */
 
+    reconcileTasks = false;
+
     for (EmacsWindow window : windows)
       {
 	if (window.preserve
@@ -410,7 +472,14 @@ && isWindowEligible (consumer, window))
 	    || (window.attachmentToken < 1)
 	    /* Nor has it never been attached.  */
 	    || !window.previouslyAttached)
-	  continue;
+	  {
+	    /* If this window's task exists without an activity, it
+	       might be removed without notice.  */
+	    if (window.preserve && window.getAttachedConsumer () == null)
+	      reconcileTasks = true;
+
+	    continue;
+	  }
 
 	window.onActivityDetached ();
       }
@@ -1621,6 +1621,10 @@ android_init_emacs_service (void)
   FIND_METHOD (get_screen_height, "getScreenHeight", "(Z)I");
   FIND_METHOD (detect_mouse, "detectMouse", "()Z");
   FIND_METHOD (detect_keyboard, "detectKeyboard", "()Z");
+  FIND_METHOD (get_pixmap_pool_statistics, "getPixmapPoolStatistics",
+	       "()[J");
+  FIND_METHOD (set_touch_motion_history, "setTouchMotionHistory",
+	       "(Z)V");
   FIND_METHOD (name_keysym, "nameKeysym", "(I)Ljava/lang/String;");
   FIND_METHOD (browse_url, "browseUrl", "(Ljava/lang/String;Z)"
 	       "Ljava/lang/String;");
@@ -1690,6 +1694,10 @@ android_init_emacs_service (void)
 	       "cancelNotification", "(Ljava/lang/String;)V");
   FIND_METHOD (relinquish_uri_rights,
 	       "relinquishUriRights", "(Ljava/lang/String;)V");
+  FIND_METHOD (get_startup_timings, "getStartupTimings", "()[J");
+  FIND_METHOD (update_text_window, "updateTextWindow",
+	       "(Lorg/gnu/emacs/EmacsWindow;Ljava/lang/String;"
+	       "IIIIIJ)V");
 #undef FIND_METHOD
 }
 
@@ -1903,6 +1911,41 @@ android_init_key_character_map (void)
   eassert (key_character_map_class.get_dead_char);
 }
 
+/* Table of handles, indexed by the low ANDROID_HANDLE_INDEX_BITS
+   bits of each handle.  The first entry is reserved for None.  */
+struct android_handle_entry *android_handles;
+
+/* Number of entries allocated and used in that table.  */
+static ptrdiff_t android_handles_size, android_handles_used;
+
+/* Circular queue of the indices of free entries in that table, its
+   size, the position of its first element and the number of entries
+   it holds.  Entries are reused in the order they were freed, so
+   that the generation of any one entry advances as slowly as
+   possible.  */
+static ptrdiff_t *android_free_handles;
+static ptrdiff_t android_free_handles_size, android_free_handles_first;
+static ptrdiff_t android_free_handles_used;
+
+/* Number of entries that must be free before any is reused, rather
+   than a new entry being allocated.  A stale handle can only match an
+   object created after at least this many handles have been
+   allocated to others.  */
+#define ANDROID_HANDLE_QUARANTINE 1024
+
+/* Allocate the table of handles, and reserve its first entry.  */
+
+static void
+android_init_handles (void)
+{
+  android_handles = xpalloc (NULL, &android_handles_size, 64,
+			     ANDROID_HANDLE_INDEX_MASK + 1,
+			     sizeof *android_handles);
+  android_handles[0].handle = 0;
+  android_handles[0].object = NULL;
+  android_handles_used = 1;
+}
+
 static void
 android_init_emacs_handle (void)
 {
@@ -1937,6 +1980,8 @@ android_init_emacs_handle (void)
 				       handle_class.class,
 				       "handle", "J");
   eassert (handle_class.handle);
+
+  android_init_handles ();
 }
 
 JNIEXPORT void JNICALL
@@ -2401,6 +2446,69 @@ NATIVE_NAME (sendTouchMove) (JNIEnv *env, jobject object,
   return event_serial;
 }
 
+JNIEXPORT jlong JNICALL
+NATIVE_NAME (sendTouchMoves) (JNIEnv *env, jobject object,
+			      jlong window, jint count,
+			      jintArray ids, jintArray xs,
+			      jintArray ys, jlongArray times)
+{
+  JNI_STACK_ALIGNMENT_PROLOGUE;
+
+  union android_event event;
+  jint *id_elements, *x_elements, *y_elements;
+  jlong *time_elements;
+  jint i;
+
+  id_elements = (*env)->GetIntArrayElements (env, ids, NULL);
+  x_elements = (*env)->GetIntArrayElements (env, xs, NULL);
+  y_elements = (*env)->GetIntArrayElements (env, ys, NULL);
+  time_elements = (*env)->GetLongArrayElements (env, times, NULL);
+
+  if (!id_elements || !x_elements || !y_elements || !time_elements)
+    goto out;
+
+  for (i = 0; i < count; ++i)
+    {
+      event.touch.type = ANDROID_TOUCH_MOVE;
+      event.touch.serial = ++event_serial;
+      event.touch.window = window;
+      event.touch.x = x_elements[i];
+      event.touch.y = y_elements[i];
+      event.touch.time = time_elements[i];
+      event.touch.pointer_id = id_elements[i];
+      event.touch.flags = 0;
+
+      /* Samples are grouped by the time at which they were taken.
+	 Unless each group is to be reported separately, in which case
+	 the UI thread sends every sample, defer reporting the motion
+	 of every tool until the last sample.  There is then no more
+	 than one sample for each tool.  */
+
+      if (i + 1 < count
+	  && (!android_touch_motion_history
+	      || time_elements[i + 1] == time_elements[i]))
+	event.touch.flags = ANDROID_TOUCH_MOVE_PENDING;
+
+      android_write_event (&event);
+    }
+
+ out:
+  if (id_elements)
+    (*env)->ReleaseIntArrayElements (env, ids, id_elements, JNI_ABORT);
+
+  if (x_elements)
+    (*env)->ReleaseIntArrayElements (env, xs, x_elements, JNI_ABORT);
+
+  if (y_elements)
+    (*env)->ReleaseIntArrayElements (env, ys, y_elements, JNI_ABORT);
+
+  if (time_elements)
+    (*env)->ReleaseLongArrayElements (env, times, time_elements,
+				      JNI_ABORT);
+
+  return event_serial;
+}
+
 JNIEXPORT jlong JNICALL
 NATIVE_NAME (sendWheel) (JNIEnv *env, jobject object,
 			 jlong window, jint x, jint y,
@@ -2887,37 +2995,101 @@ NATIVE_NAME (setupSystemThread) (void)
    This means that every local reference must be explicitly destroyed
    with DeleteLocalRef.  A helper macro is provided to do this.  */
 
-/* Destroy the specified handle and mark it as free on the Java side
-   as well.  */
+/* Append INDEX to the queue of free entries in the table of
+   handles.  */
 
 static void
-android_destroy_handle (android_handle handle)
+android_free_handle_entry (ptrdiff_t index)
 {
-  static jclass old, class;
-  static jmethodID method;
+  ptrdiff_t old_size, moved;
 
-  if (!class)
+  if (android_free_handles_used == android_free_handles_size)
     {
-      class
-	= (*android_java_env)->FindClass (android_java_env,
-					  "org/gnu/emacs/EmacsHandleObject");
-      eassert (class != NULL);
+      old_size = android_free_handles_size;
+      android_free_handles
+	= xpalloc (android_free_handles, &android_free_handles_size, 1,
+		   -1, sizeof *android_free_handles);
+
+      /* Move the elements between the start of the queue and the end
+	 of its previous storage to the end of the new storage, so
+	 that the queue remains contiguous save for wrapping around
+	 its end.  */
+      moved = old_size - android_free_handles_first;
+      memmove (android_free_handles + android_free_handles_size - moved,
+	       android_free_handles + android_free_handles_first,
+	       moved * sizeof *android_free_handles);
+
+      if (android_free_handles_used)
+	android_free_handles_first = android_free_handles_size - moved;
+      else
+	android_free_handles_first = 0;
+    }
 
-      method
-	= (*android_java_env)->GetMethodID (android_java_env, class,
-					    "destroyHandle", "()V");
-      eassert (method != NULL);
+  android_free_handles[(android_free_handles_first
+			+ android_free_handles_used)
+		       % android_free_handles_size] = index;
+  android_free_handles_used++;
+}
 
-      old = class;
-      class
-	= (jclass) (*android_java_env)->NewGlobalRef (android_java_env,
-						      (jobject) class);
-      android_exception_check_1 (old);
-      ANDROID_DELETE_LOCAL_REF (old);
+/* Return a new handle designating the global reference OBJECT, or 0
+   if the table of handles is full.  */
+
+static android_handle
+android_alloc_handle (jobject object)
+{
+  ptrdiff_t index;
+  android_handle handle;
+
+  if (android_free_handles_used > ANDROID_HANDLE_QUARANTINE
+      || (android_free_handles_used
+	  && android_handles_used > ANDROID_HANDLE_INDEX_MASK))
+    {
+      index = android_free_handles[android_free_handles_first++];
+      android_free_handles_used--;
+
+      if (android_free_handles_first == android_free_handles_size)
+	android_free_handles_first = 0;
+
+      /* Increment the generation of the entry.  Entries whose
+	 generation cannot be incremented are never freed.  */
+      handle = (android_handles[index].handle
+		+ ANDROID_HANDLE_INDEX_MASK + 1);
+    }
+  else
+    {
+      if (android_handles_used > ANDROID_HANDLE_INDEX_MASK)
+	return 0;
+
+      if (android_handles_used == android_handles_size)
+	android_handles = xpalloc (android_handles, &android_handles_size,
+				   1, ANDROID_HANDLE_INDEX_MASK + 1,
+				   sizeof *android_handles);
+
+      index = android_handles_used++;
+      handle = index | (ANDROID_HANDLE_INDEX_MASK + 1);
     }
 
-  (*android_java_env)->CallVoidMethod (android_java_env, (jobject) handle,
-				       method);
+  android_handles[index].handle = handle;
+  android_handles[index].object = object;
+  return handle;
+}
+
+/* Destroy the specified handle and mark it as free on the Java side
+   as well.  */
+
+static void
+android_destroy_handle (android_handle handle)
+{
+  jobject object;
+  ptrdiff_t index;
+
+  object = android_resolve_handle (handle);
+
+  if (!object)
+    return;
+
+  (*android_java_env)->CallVoidMethod (android_java_env, object,
+				       handle_class.destroy_handle);
 
   /* Just clear any exception thrown.  If destroying the handle
      fails from an out-of-memory error, then Emacs loses some
@@ -2925,7 +3097,20 @@ android_destroy_handle (android_handle handle)
   (*android_java_env)->ExceptionClear (android_java_env);
 
   /* Delete the global reference regardless of any error.  */
-  (*android_java_env)->DeleteGlobalRef (android_java_env, (jobject) handle);
+  (*android_java_env)->DeleteGlobalRef (android_java_env, object);
+
+  /* Release the handle's entry, leaving HANDLE in place so that its
+     generation can be incremented upon reuse.  */
+  index = handle & ANDROID_HANDLE_INDEX_MASK;
+  android_handles[index].object = NULL;
+
+  /* Retire the entry if its generation would wrap around upon
+     reuse, which is liable to happen on 32-bit systems, since a new
+     handle with the same value as HANDLE must never be created.  */
+  if (handle > INTPTR_MAX - ANDROID_HANDLE_INDEX_MASK - 1)
+    return;
+
+  android_free_handle_entry (index);
 }
 
 void
@@ -2951,14 +3136,16 @@ android_change_window_attributes (android_window handle,
     }
 }
 
-/* Return a reference to the local reference HANDLE suitable for
-   indefinite retention and save its value into HANDLE, deleting HANDLE,
-   or signal an error if such a reference cannot be allocated.  */
+/* Return a handle designating a reference to the local reference
+   HANDLE suitable for indefinite retention and save its value into
+   HANDLE, deleting HANDLE, or signal an error if such a reference
+   cannot be allocated.  */
 
 static android_handle
 android_globalize_reference (jobject handle)
 {
   jobject global;
+  android_handle value;
 
   /* Though Android 8.0 and later can support an unlimited number of
      active local references, they remain inappropriate in threading
@@ -2972,12 +3159,20 @@ android_globalize_reference (jobject handle)
   if (__builtin_expect (global == NULL, 0))
     error ("JNI global reference reserves exhausted");
 
+  value = android_alloc_handle (global);
+
+  if (__builtin_expect (value == 0, 0))
+    {
+      (*android_java_env)->DeleteGlobalRef (android_java_env, global);
+      error ("Too many handles in use");
+    }
+
   /* Save the value of this handle into HANDLE.  */
   (*android_java_env)->SetLongField (android_java_env, global,
 				     handle_class.handle,
-				     (jlong) global);
+				     (jlong) value);
   verify (sizeof (jlong) >= sizeof (intptr_t));
-  return (intptr_t) global;
+  return value;
 }
 
 /* Create a new window with the given width, height and
@@ -4394,7 +4589,7 @@ android_copy_area (android_drawable src, android_drawable dest,
      window.  */
 
   if ((*android_java_env)->IsInstanceOf (android_java_env,
-					 (jobject) dest,
+					 android_resolve_handle (dest),
 					 window_class.class))
     android_damage_window (dest, &bounds);
 
@@ -5571,6 +5766,54 @@ android_detect_keyboard (void)
   return rc;
 }
 
+/* Return the statistics of the pool of bitmaps released by destroyed
+   pixmaps in STATISTICS: the number of pixmaps created with a bitmap
+   from the pool, the number created without, the number of bitmaps
+   retained, and the number of bytes they occupy.  */
+
+void
+android_get_pixmap_pool_statistics (intmax_t statistics[4])
+{
+  jlongArray array;
+  jlong values[4];
+  jmethodID method;
+  int i;
+
+  method = service_class.get_pixmap_pool_statistics;
+  array
+    = (*android_java_env)->CallNonvirtualObjectMethod (android_java_env,
+						       emacs_service,
+						       service_class.class,
+						       method);
+  android_exception_check ();
+
+  (*android_java_env)->GetLongArrayRegion (android_java_env, array,
+					   0, 4, values);
+  android_exception_check_1 (array);
+  ANDROID_DELETE_LOCAL_REF (array);
+
+  for (i = 0; i < 4; ++i)
+    statistics[i] = values[i];
+}
+
+/* Tell the UI thread whether every sample of touch screen motion is
+   to be reported, as HISTORY says, or only the last position of each
+   tool during each frame.  */
+
+void
+android_set_touch_motion_history (bool history)
+{
+  jmethodID method;
+
+  method = service_class.set_touch_motion_history;
+  (*android_java_env)->CallNonvirtualVoidMethod (android_java_env,
+						 emacs_service,
+						 service_class.class,
+						 method,
+						 (jboolean) history);
+  android_exception_check ();
+}
+
 void
 android_set_dont_focus_on_map (android_window handle,
 			       bool no_focus_on_map)
@@ -6587,6 +6830,45 @@ android_query_battery (struct android_battery_state *status)
   return 0;
 }
 
+/* Retrieve the time elapsed between the creation of the application
+   and each phase of startup, in nanoseconds, into TIMINGS, which
+   holds up to N elements.  Phases yet to be reached are represented
+   by -1.  Value is the number of elements stored.  */
+
+int
+android_get_startup_timings (long long *timings, int n)
+{
+  jlongArray array;
+  jlong *longs;
+  jsize length;
+  jmethodID method;
+  int i;
+
+  method = service_class.get_startup_timings;
+  array
+    = (*android_java_env)->CallNonvirtualObjectMethod (android_java_env,
+						       emacs_service,
+						       service_class.class,
+						       method);
+  android_exception_check ();
+
+  length = (*android_java_env)->GetArrayLength (android_java_env,
+						array);
+  longs = (*android_java_env)->GetLongArrayElements (android_java_env,
+						     array, NULL);
+  android_exception_check_nonnull (longs, array);
+
+  for (i = 0; i < n && i < length; ++i)
+    timings[i] = longs[i];
+
+  (*android_java_env)->ReleaseLongArrayElements (android_java_env,
+						 array, longs,
+						 JNI_ABORT);
+  ANDROID_DELETE_LOCAL_REF (array);
+
+  return i;
+}
+
 /* Display a file panel and grant Emacs access to the SAF directory
    within it.  Value is 1 upon failure and 0 upon success (which only
    indicates that the panel has been displayed successfully; the panel
@@ -7110,6 +7392,49 @@ android_update_extracted_text (android_window window, void *text,
   android_exception_check_1 (text);
 }
 
+/* Save a snapshot of the text around point in WINDOW on the Java
+   side, whence input method queries for that text are answered.
+   TEXT should be a local reference to a string holding that text, or
+   NULL to discard any existing snapshot.  OFFSET is the position of
+   the first character of TEXT, SELECTION_START, SELECTION_END,
+   COMPOSING_START and COMPOSING_END are the bounds of the selection
+   and composing region, and COUNTER is the number of the last edit
+   reflected in TEXT.  */
+
+void
+android_update_text_window (android_window window, void *text,
+			    ptrdiff_t offset, ptrdiff_t selection_start,
+			    ptrdiff_t selection_end,
+			    ptrdiff_t composing_start,
+			    ptrdiff_t composing_end,
+			    unsigned long counter)
+{
+  jobject object;
+  jmethodID method;
+
+  object = android_resolve_handle (window);
+  method = service_class.update_text_window;
+
+  (*android_java_env)->CallNonvirtualVoidMethod (android_java_env,
+						 emacs_service,
+						 service_class.class,
+						 method, object,
+						 /* N.B. that text is
+						    not jobject,
+						    because that type
+						    is not available
+						    in
+						    androidgui.h.  */
+						 (jobject) text,
+						 (jint) offset,
+						 (jint) selection_start,
+						 (jint) selection_end,
+						 (jint) composing_start,
+						 (jint) composing_end,
+						 (jlong) counter);
+  android_exception_check ();
+}
+
 /* Report the position of the cursor to the input method connection on
    WINDOW.
 
@@ -103,8 +103,44 @@ extern ssize_t android_readlinkat (int, const char *restrict, char *restrict,
 extern double android_pixel_density_x, android_pixel_density_y;
 extern double android_scaled_pixel_density;
 
-verify (sizeof (android_handle) == sizeof (jobject));
-#define android_resolve_handle(handle) ((jobject) (handle))
+/* Entry in the table of handles.  Each handle is the index of its
+   entry in the table, combined with a generation number that is
+   incremented each time the entry is reused, so that handles to
+   destroyed objects are never mistaken for handles to objects
+   subsequently created.  */
+
+struct android_handle_entry
+{
+  /* The last handle to occupy this entry.  */
+  android_handle handle;
+
+  /* Global reference to the object designated by that handle, or
+     NULL if it has been destroyed.  */
+  jobject object;
+};
+
+/* Number of bits in a handle holding the index of its entry.  Fewer
+   bits are devoted to the index on 32-bit systems, leaving more for
+   the generation; the number of global references that can exist at
+   any one time is limited to fewer than 65536 by the JVM in any
+   case.  */
+#if INTPTR_MAX > INT32_MAX
+#define ANDROID_HANDLE_INDEX_BITS 20
+#else /* INTPTR_MAX <= INT32_MAX */
+#define ANDROID_HANDLE_INDEX_BITS 16
+#endif /* INTPTR_MAX > INT32_MAX */
+#define ANDROID_HANDLE_INDEX_MASK \
+  (((android_handle) 1 << ANDROID_HANDLE_INDEX_BITS) - 1)
+
+extern struct android_handle_entry *android_handles;
+
+/* Return the object designated by ID, or NULL if ID is None or
+   designates an object that has been destroyed.  ID is evaluated more
+   than once.  */
+#define android_resolve_handle(id)					\
+  (android_handles[(id) & ANDROID_HANDLE_INDEX_MASK].handle == (id)	\
+   ? android_handles[(id) & ANDROID_HANDLE_INDEX_MASK].object		\
+   : NULL)
 
 extern unsigned char *android_lock_bitmap (android_drawable,
 					   AndroidBitmapInfo *,
@@ -117,6 +153,8 @@ extern int android_get_mm_width (void);
 extern int android_get_mm_height (void);
 extern bool android_detect_mouse (void);
 extern bool android_detect_keyboard (void);
+extern void android_get_pixmap_pool_statistics (intmax_t[4]);
+extern void android_set_touch_motion_history (bool);
 
 extern void android_set_dont_focus_on_map (android_window, bool);
 extern void android_set_dont_accept_focus (android_window, bool);
@@ -238,6 +276,7 @@ struct android_battery_state
 
 extern Lisp_Object android_browse_url (Lisp_Object, Lisp_Object);
 extern int android_query_battery (struct android_battery_state *);
+extern int android_get_startup_timings (long long *, int);
 extern void android_display_toast (const char *);
 
 
@@ -284,6 +323,8 @@ struct android_emacs_service
   jmethodID get_screen_height;
   jmethodID detect_mouse;
   jmethodID detect_keyboard;
+  jmethodID get_pixmap_pool_statistics;
+  jmethodID set_touch_motion_history;
   jmethodID name_keysym;
   jmethodID browse_url;
   jmethodID restart_emacs;
@@ -314,6 +355,8 @@ struct android_emacs_service
   jmethodID request_storage_access;
   jmethodID cancel_notification;
   jmethodID relinquish_uri_rights;
+  jmethodID get_startup_timings;
+  jmethodID update_text_window;
 };
 
 extern JNIEnv *android_java_env;
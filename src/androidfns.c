@@ -2626,6 +2626,34 @@ if there is no keyboard.  */)
 #endif /* ANDROID_STUBIFY */
 }
 
+DEFUN ("android-pixmap-pool-statistics",
+       Fandroid_pixmap_pool_statistics,
+       Sandroid_pixmap_pool_statistics, 0, 0, 0,
+       doc: /* Return statistics on the reuse of pixmap storage.
+Bitmaps belonging to pixmaps that are freed are retained, and reused
+for subsequent pixmaps of the same dimensions and depth.  Value is a
+list of the form (HITS MISSES COUNT BYTES), where HITS and MISSES are
+the numbers of pixmaps created with and without reusing such a
+bitmap, and COUNT and BYTES are the number of bitmaps presently
+retained and the number of bytes they occupy.
+
+Value is nil if there is no display connection.  */)
+  (void)
+{
+#ifndef ANDROID_STUBIFY
+  intmax_t statistics[4];
+
+  if (!android_init_gui)
+    return Qnil;
+
+  android_get_pixmap_pool_statistics (statistics);
+  return list4 (make_int (statistics[0]), make_int (statistics[1]),
+		make_int (statistics[2]), make_int (statistics[3]));
+#else /* ANDROID_STUBIFY */
+  return Qnil;
+#endif /* ANDROID_STUBIFY */
+}
+
 DEFUN ("android-toggle-on-screen-keyboard",
        Fandroid_toggle_on_screen_keyboard,
        Sandroid_toggle_on_screen_keyboard, 2, 2, 0,
@@ -3228,6 +3256,84 @@ for more details about these values.  */)
 
 
 
+/* Startup time measurement.  */
+
+/* Names of each phase of startup, in the order established by
+   EmacsStartupTracer.java.  */
+
+static const char *const android_startup_phases[] =
+  {
+    "application-create",
+    "service-create",
+    "thread-start",
+    "init-emacs",
+    "first-swap",
+    "first-draw",
+  };
+
+/* Names of each task performed during startup, in the order
+   established by EmacsStartupTracer.java.  */
+
+static const char *const android_startup_tasks[] =
+  {
+    "locate-apk",
+    "locate-dump",
+    "delete-dumps",
+    "prefetch-dump",
+  };
+
+DEFUN ("android-startup-timings", Fandroid_startup_timings,
+       Sandroid_startup_timings, 0, 0, 0,
+       doc: /* Return the time taken by each phase of Emacs's startup.
+Value is nil upon failure, or an alist of elements of the form:
+
+  (PHASE . SECONDS)
+
+where PHASE is one of the symbols `application-create',
+`service-create', `thread-start', `init-emacs', `first-swap' and
+`first-draw', and SECONDS is the time elapsed between the creation of
+the application and the point at which PHASE was reached, or nil if it
+has yet to be.
+
+`first-swap' is reached when Emacs first finishes drawing a frame, and
+`first-draw' when that frame is first displayed.
+
+The alist also holds elements of the same form for each task performed
+during startup, where PHASE is one of the symbols `locate-apk',
+`locate-dump', `delete-dumps' and `prefetch-dump', and SECONDS is the
+time taken by that task, or nil if it has yet to be completed.  */)
+  (void)
+{
+  long long timings[ARRAYELTS (android_startup_phases)
+		    + ARRAYELTS (android_startup_tasks)];
+  Lisp_Object value;
+  const char *name;
+  int n;
+
+  if (!android_init_gui)
+    return Qnil;
+
+  n = android_get_startup_timings (timings, ARRAYELTS (timings));
+  value = Qnil;
+
+  while (n--)
+    {
+      if (n < ARRAYELTS (android_startup_phases))
+	name = android_startup_phases[n];
+      else
+	name = android_startup_tasks[n - ARRAYELTS (android_startup_phases)];
+
+      value = Fcons (Fcons (intern_c_string (name),
+			    (timings[n] < 0 ? Qnil
+			     : make_float (timings[n] / 1e9))),
+		     value);
+    }
+
+  return value;
+}
+
+
+
 /* SAF directory access management.  */
 
 DEFUN ("android-request-directory-access", Fandroid_request_directory_access,
@@ -3747,11 +3853,13 @@ language to be US English if LANGUAGE is empty.  */);
   defsubr (&Sx_hide_tip);
   defsubr (&Sandroid_detect_mouse);
   defsubr (&Sandroid_detect_keyboard);
+  defsubr (&Sandroid_pixmap_pool_statistics);
   defsubr (&Sandroid_toggle_on_screen_keyboard);
   defsubr (&Sx_server_vendor);
   defsubr (&Sx_server_version);
 #ifndef ANDROID_STUBIFY
   defsubr (&Sandroid_query_battery);
+  defsubr (&Sandroid_startup_timings);
   defsubr (&Sandroid_request_directory_access);
   defsubr (&Sandroid_external_storage_available_p);
   defsubr (&Sandroid_request_storage_access);
@@ -413,6 +413,11 @@ enum android_touch_event_flags
     /* This touch sequence has been intercepted by the WM (probably
        for back gesture navigation or some such.)  */
     ANDROID_TOUCH_SEQUENCE_CANCELED = 1,
+
+    /* Motion of other tools reported at the same time follows this
+       event, so the touch screen update should be deferred until
+       then.  */
+    ANDROID_TOUCH_MOVE_PENDING	    = 2,
   };
 
 struct android_touch_event
@@ -792,6 +797,10 @@ extern void android_update_ic (android_window, ptrdiff_t, ptrdiff_t,
 extern void android_reset_ic (android_window, enum android_ic_mode);
 extern void android_update_extracted_text (android_window, void *,
 					   int);
+extern void android_update_text_window (android_window, void *,
+					ptrdiff_t, ptrdiff_t, ptrdiff_t,
+					ptrdiff_t, ptrdiff_t,
+					unsigned long);
 extern void android_update_cursor_anchor_info (android_window, float,
 					       float, float, float);
 extern int android_set_fullscreen (android_window, bool);
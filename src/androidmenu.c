@@ -62,6 +62,7 @@ struct android_emacs_context_menu
   jmethodID parent;
   jmethodID display;
   jmethodID dismiss;
+  jmethodID apply_state;
 };
 
 /* Identifiers associated with the EmacsContextMenu class.  */
@@ -113,6 +114,7 @@ android_init_emacs_context_menu (void)
   FIND_METHOD (parent, "parent", "()Lorg/gnu/emacs/EmacsContextMenu;");
   FIND_METHOD (display, "display", "(Lorg/gnu/emacs/EmacsWindow;III)Z");
   FIND_METHOD (dismiss, "dismiss", "(Lorg/gnu/emacs/EmacsWindow;)V");
+  FIND_METHOD (apply_state, "applyState", "([Z)V");
 
 #undef FIND_METHOD
 #undef FIND_METHOD_STATIC
@@ -211,6 +213,211 @@ android_process_events_for_menu (int *id)
   *id = x_display_list->menu_event_id;
 }
 
+/* Cache of context menu objects.
+
+   Creating an EmacsContextMenu requires a call into the JVM and the
+   creation of one or two Java strings for each item, which is slow
+   for menus with hundreds of items.  Yet the same menus, such as the
+   menu bar or the buffer menu, are often displayed time and again
+   with only the state of their items changed.  Hence, the last few
+   menus to be displayed are retained along with a copy of the part of
+   `menu_items' that determines their structure, and reused when a
+   menu with the same structure is displayed, after their items are
+   enabled or checked as appropriate.  */
+
+/* Number of menus retained.  */
+#define ANDROID_MENU_CACHE_SIZE 4
+
+struct android_cached_menu
+{
+  /* Hash of the key describing this menu's structure.  */
+  EMACS_UINT hash;
+
+  /* Global reference to the EmacsContextMenu object, or NULL.  */
+  jobject menu;
+};
+
+/* The menus retained.  */
+static struct android_cached_menu menu_cache[ANDROID_MENU_CACHE_SIZE];
+
+/* Vector of the keys of each menu in `menu_cache'.  */
+static Lisp_Object menu_cache_keys;
+
+/* Index of the entry in `menu_cache' to be replaced next.  */
+static int menu_cache_next;
+
+/* Return a vector describing the structure of the menu in
+   `menu_items' with the title TITLE, given MENUFLAGS.  Two menus with
+   the same structure are identical save for the state of their items,
+   and the value of each item, which is not sent to Java.  Set *HASH
+   to a hash of the vector's contents.  */
+
+static Lisp_Object
+android_menu_key (Lisp_Object title, int menuflags, EMACS_UINT *hash)
+{
+  Lisp_Object key, tem;
+  ptrdiff_t i, j;
+
+  key = make_nil_vector (menu_items_used + 2);
+  ASET (key, 0, (STRINGP (title) && menu_items_n_panes < 2
+		 ? title : Qnil));
+  ASET (key, 1, make_fixnum ((menuflags & MENU_KEYMAPS)
+			     + (menu_items_n_panes < 2) * 2));
+  i = 0;
+
+  while (i < menu_items_used)
+    {
+      tem = AREF (menu_items, i);
+
+      if (NILP (tem) || EQ (tem, Qlambda) || EQ (tem, Qquote))
+	{
+	  ASET (key, i + 2, tem);
+	  i += 1;
+	}
+      else if (EQ (tem, Qt))
+	{
+	  for (j = 0; j < MENU_ITEMS_PANE_LENGTH; ++j)
+	    ASET (key, i + j + 2, AREF (menu_items, i + j));
+
+	  i += MENU_ITEMS_PANE_LENGTH;
+	}
+      else
+	{
+	  /* Omit the item's state and value.  Only whether its
+	     definition is nil affects its display.  */
+
+	  ASET (key, i + 2 + MENU_ITEMS_ITEM_NAME,
+		AREF (menu_items, i + MENU_ITEMS_ITEM_NAME));
+	  tem = AREF (menu_items, i + MENU_ITEMS_ITEM_DEFINITION);
+	  ASET (key, i + 2 + MENU_ITEMS_ITEM_DEFINITION,
+		NILP (tem) ? Qnil : Qt);
+	  ASET (key, i + 2 + MENU_ITEMS_ITEM_TYPE,
+		AREF (menu_items, i + MENU_ITEMS_ITEM_TYPE));
+	  ASET (key, i + 2 + MENU_ITEMS_ITEM_HELP,
+		AREF (menu_items, i + MENU_ITEMS_ITEM_HELP));
+	  i += MENU_ITEMS_ITEM_LENGTH;
+	}
+    }
+
+  *hash = 0;
+
+  for (i = 0; i < ASIZE (key); ++i)
+    *hash = sxhash_combine (*hash, sxhash (AREF (key, i)));
+
+  return key;
+}
+
+/* Return a local reference to a menu in the cache whose structure is
+   described by KEY with the hash HASH, or NULL if there is none.  */
+
+static jobject
+android_find_cached_menu (Lisp_Object key, EMACS_UINT hash)
+{
+  int i;
+
+  for (i = 0; i < ANDROID_MENU_CACHE_SIZE; ++i)
+    {
+      if (menu_cache[i].menu && menu_cache[i].hash == hash
+	  && !NILP (Fequal (AREF (menu_cache_keys, i), key)))
+	return (*android_java_env)->NewLocalRef (android_java_env,
+						 menu_cache[i].menu);
+    }
+
+  return NULL;
+}
+
+/* Save MENU in the cache, with its structure described by KEY with
+   the hash HASH, replacing the least recently saved menu if the cache
+   is full.  */
+
+static void
+android_cache_menu (jobject menu, Lisp_Object key, EMACS_UINT hash)
+{
+  jobject ref;
+  struct android_cached_menu *entry;
+
+  ref = (*android_java_env)->NewGlobalRef (android_java_env, menu);
+
+  /* If a global reference can't be created, simply don't cache the
+     menu.  */
+
+  if (!ref)
+    {
+      (*android_java_env)->ExceptionClear (android_java_env);
+      return;
+    }
+
+  entry = &menu_cache[menu_cache_next];
+
+  if (entry->menu)
+    (*android_java_env)->DeleteGlobalRef (android_java_env,
+					  entry->menu);
+
+  entry->menu = ref;
+  entry->hash = hash;
+  ASET (menu_cache_keys, menu_cache_next, key);
+  menu_cache_next = (menu_cache_next + 1) % ANDROID_MENU_CACHE_SIZE;
+}
+
+/* Update the state of each item in MENU, a menu retrieved from the
+   cache, from `menu_items'.  */
+
+static void
+android_apply_menu_state (jobject menu)
+{
+  jboolean *states;
+  jbooleanArray array;
+  ptrdiff_t i, n;
+  Lisp_Object tem, item_name, def;
+  USE_SAFE_ALLOCA;
+
+  SAFE_NALLOCA (states, 2, menu_items_used);
+  i = n = 0;
+
+  /* Enumerate the items in the same order in which they were added
+     by `android_menu_show', and skip submenus, panes and separators,
+     none of which have a state.  */
+
+  while (i < menu_items_used)
+    {
+      tem = AREF (menu_items, i);
+
+      if (NILP (tem) || EQ (tem, Qlambda) || EQ (tem, Qquote))
+	i += 1;
+      else if (EQ (tem, Qt))
+	i += MENU_ITEMS_PANE_LENGTH;
+      else
+	{
+	  item_name = AREF (menu_items, i + MENU_ITEMS_ITEM_NAME);
+	  def = AREF (menu_items, i + MENU_ITEMS_ITEM_DEFINITION);
+
+	  if (!(i + MENU_ITEMS_ITEM_LENGTH < menu_items_used
+		&& NILP (AREF (menu_items, i + MENU_ITEMS_ITEM_LENGTH)))
+	      && !(NILP (def) && menu_separator_name_p (SSDATA (item_name))))
+	    {
+	      tem = AREF (menu_items, i + MENU_ITEMS_ITEM_ENABLE);
+	      states[n++] = !NILP (tem);
+	      tem = AREF (menu_items, i + MENU_ITEMS_ITEM_SELECTED);
+	      states[n++] = !NILP (tem);
+	    }
+
+	  i += MENU_ITEMS_ITEM_LENGTH;
+	}
+    }
+
+  array = (*android_java_env)->NewBooleanArray (android_java_env, n);
+  android_exception_check ();
+  (*android_java_env)->SetBooleanArrayRegion (android_java_env, array,
+					      0, n, states);
+  (*android_java_env)->CallNonvirtualVoidMethod (android_java_env, menu,
+						 menu_class.class,
+						 menu_class.apply_state,
+						 array);
+  android_exception_check_1 (array);
+  ANDROID_DELETE_LOCAL_REF (array);
+  SAFE_FREE ();
+}
+
 /* Structure describing a ``subprefix'' in the menu.  */
 
 struct android_menu_subprefix
@@ -262,6 +469,8 @@ android_menu_show (struct frame *f, int x, int y, int menuflags,
   bool checkmark;
   unsigned int serial;
   JNIEnv *env;
+  Lisp_Object key;
+  EMACS_UINT hash;
 
   count = SPECPDL_INDEX ();
   serial = ++current_menu_serial;
@@ -272,6 +481,17 @@ android_menu_show (struct frame *f, int x, int y, int menuflags,
   /* Push the first local frame.  */
   android_push_local_frame ();
 
+  /* If a menu with the same structure has been displayed recently,
+     reuse it.  */
+  key = android_menu_key (title, menuflags, &hash);
+  context_menu = android_find_cached_menu (key, hash);
+
+  if (context_menu)
+    {
+      android_apply_menu_state (context_menu);
+      goto display_menu;
+    }
+
   /* Set title_string to a Java string containing TITLE if non-nil.
      If the menu consists of more than one pane, replace the title
      with the pane header item so that the menu looks consistent.  */
@@ -487,6 +707,10 @@ android_menu_show (struct frame *f, int x, int y, int menuflags,
   /* The menu has now been built.  Pop the second local frame.  */
   unbind_to (count1, Qnil);
 
+  /* Save it for future use.  */
+  android_cache_menu (context_menu, key, hash);
+
+ display_menu:
   /* Now, display the context menu.  */
   window = android_resolve_handle (FRAME_ANDROID_WINDOW (f));
   rc = (*env)->CallNonvirtualBooleanMethod (env, context_menu,
@@ -857,4 +1081,9 @@ void
 syms_of_androidmenu (void)
 {
   defsubr (&Smenu_or_popup_active_p);
+
+#ifndef ANDROID_STUBIFY
+  menu_cache_keys = make_nil_vector (ANDROID_MENU_CACHE_SIZE);
+  staticpro (&menu_cache_keys);
+#endif /* !ANDROID_STUBIFY */
 }
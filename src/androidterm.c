@@ -58,6 +58,11 @@ static bool any_help_event_p;
 
 static double wheel_event_x, wheel_event_y;
 
+/* Whether the touch screen update for motion events received so far
+   has been deferred until the arrival of another.  */
+
+static bool android_touch_update_pending;
+
 enum
   {
     ANDROID_EVENT_NORMAL,
@@ -816,8 +821,9 @@ android_handle_ime_event (union android_event *event, struct frame *f)
 
 
 
-/* Forward declaration.  */
+/* Forward declarations.  */
 static void android_notify_conversion (unsigned long);
+static void android_refresh_text_window (struct frame *);
 
 static int
 handle_one_android_event (struct android_display_info *dpyinfo,
@@ -1518,15 +1524,32 @@ handle_one_android_event (struct android_display_info *dpyinfo,
       touchpoint = android_find_tool (any, event->touch.pointer_id);
 
       /* If it doesn't exist or has been grabbed by the tool bar, skip
-	 processing this event.  */
+	 processing this event, unless it concludes a series of
+	 motion events whose update was deferred until now.  */
 
       if (!touchpoint || touchpoint->tool_bar_p)
-	goto OTHER;
+	{
+	  if ((event->touch.flags & ANDROID_TOUCH_MOVE_PENDING)
+	      || !android_touch_update_pending)
+	    goto OTHER;
+	}
+      else
+	{
+	  /* Otherwise, update the position.  */
+	  touchpoint->x = event->touch.x;
+	  touchpoint->y = event->touch.y;
+	}
 
-      /* Otherwise, update the position and send the update event.  */
+      /* If other tools moved at the same time, wait for their
+	 events before sending the update event.  */
 
-      touchpoint->x = event->touch.x;
-      touchpoint->y = event->touch.y;
+      if (event->touch.flags & ANDROID_TOUCH_MOVE_PENDING)
+	{
+	  android_touch_update_pending = true;
+	  goto OTHER;
+	}
+
+      android_touch_update_pending = false;
       android_update_tools (any, &inev.ie);
       inev.ie.timestamp = event->touch.time;
 
@@ -1898,6 +1921,11 @@ android_frame_up_to_date (struct frame *f)
   /* The frame is now complete, as its contents have been drawn.  */
   FRAME_ANDROID_COMPLETE_P (f) = true;
 
+  /* Discard the text around point sent to the input method if it has
+     been modified without point moving, or send it anew if the input
+     method has asked for it since.  */
+  android_refresh_text_window (f);
+
   /* Shrink the scanline buffer used by the font backend.  */
   sfntfont_android_shrink_scanline_buffer ();
   unblock_input ();
@@ -5152,6 +5180,10 @@ android_perform_conversion_query (void *data)
   if (!f)
     return;
 
+  /* Send a snapshot of the text around point after the next
+     redisplay, if the last was discarded.  */
+  FRAME_ANDROID_OUTPUT (f)->text_window_requested = true;
+
   textconv_query (f, &context->query, 0);
 
   /* context->query.text will have been set even if textconv_query
@@ -5512,6 +5544,16 @@ NATIVE_NAME (getSelection) (JNIEnv *env, jobject object, jlong window)
   return array;
 }
 
+JNIEXPORT jlong JNICALL
+NATIVE_NAME (getEditCounter) (JNIEnv *env, jobject object)
+{
+  JNI_STACK_ALIGNMENT_PROLOGUE;
+
+  /* edit_counter is only modified from the UI thread, which is also
+     the only thread from which this function is called.  */
+  return edit_counter;
+}
+
 JNIEXPORT void JNICALL
 NATIVE_NAME (performEditorAction) (JNIEnv *env, jobject object,
 				   jlong window, int action)
@@ -5669,6 +5711,10 @@ android_get_extracted_text (void *data)
   if (!f)
     return;
 
+  /* Send a snapshot of the text around point after the next
+     redisplay, if the last was discarded.  */
+  FRAME_ANDROID_OUTPUT (f)->text_window_requested = true;
+
   /* Now get the extracted text.  */
   request->text
     = get_extracted_text (f, min (request->hint_max_chars, 600),
@@ -6035,6 +6081,10 @@ android_get_surrounding_text (void *data)
   if (!f)
     return;
 
+  /* Send a snapshot of the text around point after the next
+     redisplay, if the last was discarded.  */
+  FRAME_ANDROID_OUTPUT (f)->text_window_requested = true;
+
   /* Now get the surrounding text.  */
   request->text
     = get_surrounding_text (f, request->before_length,
@@ -6250,6 +6300,138 @@ NATIVE_NAME (takeSnapshot) (JNIEnv *env, jobject object, jlong window)
 
 
 
+/* Number of characters before and after the selection included in
+   the snapshots of text sent to input method connections.  */
+#define ANDROID_TEXT_WINDOW_SIZE 256
+
+/* Send a snapshot of the text around point in W, F's selected window,
+   to the input method connection, which answers queries for that
+   text from it without waiting for the Emacs thread.  POINT and MARK
+   are the positions of point and mark, and START and END those of
+   the composing region, as reported to the input method.  */
+
+static void
+android_send_text_window (struct frame *f, struct window *w,
+			  ptrdiff_t point, ptrdiff_t mark,
+			  ptrdiff_t start, ptrdiff_t end)
+{
+  char *text;
+  ptrdiff_t length, bytes, offset, text_mark, text_point;
+  jstring string;
+  unsigned long counter;
+  struct android_output *output;
+  struct buffer *b;
+
+  text = NULL;
+  string = NULL;
+  offset = 0;
+  output = FRAME_ANDROID_OUTPUT (f);
+
+  if (WINDOW_LIVE_P (f->old_selected_window)
+      && w == XWINDOW (f->old_selected_window))
+    text = get_surrounding_text (f, ANDROID_TEXT_WINDOW_SIZE,
+				 ANDROID_TEXT_WINDOW_SIZE, &length,
+				 &bytes, &offset, &text_mark,
+				 &text_point);
+
+  if (text)
+    {
+      /* OFFSET is 1-based, and TEXT_MARK and TEXT_POINT are relative
+	 to it.  Discard the text if the selection within disagrees
+	 with the selection being reported, as it might if point has
+	 moved since the last redisplay.  */
+
+      offset -= 1;
+
+      if (offset + min (text_point, text_mark) == min (point, mark)
+	  && offset + max (text_point, text_mark) == max (point, mark)
+	  && offset <= TYPE_MAXIMUM (jint))
+	{
+	  string = android_text_to_string (android_java_env, text,
+					   length, bytes);
+	  xfree (text);
+	  android_exception_check ();
+	}
+      else
+	xfree (text);
+    }
+
+  /* Tag the snapshot with the last edit it reflects.  If an input
+     method edit is being processed, that is the edit in question.  */
+  counter = max (conversion_action_counter,
+		 __atomic_load_n (&last_edit_counter, __ATOMIC_SEQ_CST));
+
+  android_update_text_window (FRAME_ANDROID_WINDOW (f), string, offset,
+			      min (point, mark), max (point, mark),
+			      start, end, counter);
+
+  /* Record the state of the buffer whose text was sent, so that the
+     snapshot can be replaced once that text changes.  */
+
+  if (string)
+    {
+      b = XBUFFER (w->contents);
+      output->text_window_buffer = b;
+      output->text_window_modiff = BUF_CHARS_MODIFF (b);
+      output->text_window_point = point;
+      output->text_window_mark = mark;
+      output->text_window_start = start;
+      output->text_window_end = end;
+      ANDROID_DELETE_LOCAL_REF (string);
+    }
+  else
+    output->text_window_buffer = NULL;
+
+  output->text_window_stale = false;
+  output->text_window_requested = false;
+}
+
+/* Discard the snapshot of the text around point last sent to the
+   input method for F if it no longer reflects the text of its buffer,
+   or send a new snapshot if one has been discarded and the input
+   method has since asked Emacs for text.
+
+   Snapshots are otherwise only sent when point or mark moves, but
+   text can be inserted or deleted around point without either moving,
+   as by a process filter or timer.  Building a snapshot is not free,
+   so one is not sent after each such change, but only once the input
+   method asks for text in its absence; its queries are answered by
+   Emacs until then.  The new snapshot reflects the selection and
+   composing region last reported, and is itself discarded if those
+   no longer agree with the window.  Call this after F is
+   redisplayed.  */
+
+static void
+android_refresh_text_window (struct frame *f)
+{
+  struct android_output *output;
+  struct window *w;
+
+  output = FRAME_ANDROID_OUTPUT (f);
+  w = XWINDOW (f->selected_window);
+
+  if (output->text_window_buffer)
+    {
+      if (XBUFFER (w->contents) == output->text_window_buffer
+	  && (BUF_CHARS_MODIFF (output->text_window_buffer)
+	      == output->text_window_modiff))
+	return;
+
+      android_update_text_window (FRAME_ANDROID_WINDOW (f), NULL, 0,
+				  0, 0, -1, -1, 0);
+      output->text_window_buffer = NULL;
+      output->text_window_stale = true;
+      output->text_window_requested = false;
+      return;
+    }
+
+  if (output->text_window_stale && output->text_window_requested)
+    android_send_text_window (f, w, output->text_window_point,
+			      output->text_window_mark,
+			      output->text_window_start,
+			      output->text_window_end);
+}
+
 /* Tell the input method where the composing region and selection of
    F's selected window is located.  W should be F's selected window;
    if it is NULL, then F->selected_window is used in its place.  */
@@ -6317,6 +6499,10 @@ android_update_selection (struct frame *f, struct window *w)
   android_update_ic (FRAME_ANDROID_WINDOW (f), min (point, mark),
 		     max (point, mark), start, end);
 
+  /* Send the text around the selection as well, so that queries for
+     it can be answered without calling into Emacs.  */
+  android_send_text_window (f, w, point, mark, start, end);
+
   /* Update the extracted text as well, if the input method has asked
      for updates.  1 is InputConnection.GET_EXTRACTED_TEXT_MONITOR.  */
 
@@ -6613,6 +6799,25 @@ android_create_terminal (struct android_display_info *dpyinfo)
 /* Initialize the Android terminal interface.  The display connection
    has already been set up by the system at this point.  */
 
+#ifndef ANDROID_STUBIFY
+
+/* Watcher for `android-touch-motion-history'.  Forward its new value
+   to the UI thread, which records touch screen motion accordingly.  */
+
+static Lisp_Object
+android_watch_touch_motion_history (Lisp_Object symbol,
+				    Lisp_Object newval,
+				    Lisp_Object operation,
+				    Lisp_Object where)
+{
+  if (android_init_gui)
+    android_set_touch_motion_history (!NILP (newval));
+
+  return Qnil;
+}
+
+#endif /* !ANDROID_STUBIFY */
+
 void
 android_term_init (void)
 {
@@ -6647,6 +6852,9 @@ android_term_init (void)
   dpyinfo->resx = android_pixel_density_x;
   dpyinfo->resy = android_pixel_density_y;
   dpyinfo->font_resolution = android_scaled_pixel_density;
+
+  /* Tell the UI thread how to coalesce touch screen motion.  */
+  android_set_touch_motion_history (android_touch_motion_history);
 #endif /* !ANDROID_STUBIFY */
 
   /* https://lists.gnu.org/r/emacs-devel/2015-11/msg00194.html  */
@@ -6843,6 +7051,28 @@ unavailable, or if another key must otherwise serve this function
   - 24 (KEYCODE_VOLUME_UP)  */);
   android_quit_keycode = 25;
 
+  DEFVAR_BOOL ("android-touch-motion-history", android_touch_motion_history,
+    doc: /* Non-nil means to report each sample of touch screen motion.
+Touch screens are often sampled more frequently than the display is
+refreshed, and Emacs normally reports the final positions of all tools
+that moved during each frame in a single `touchscreen-update' event.
+If non-nil, an event is generated for each intermediate sample as
+well, which is of use to programs that record handwriting or
+drawings.  */);
+  android_touch_motion_history = false;
+
+#ifndef ANDROID_STUBIFY
+  Lisp_Object watcher;
+
+  static union Aligned_Lisp_Subr Swatch_touch_motion_history =
+     {{{ PSEUDOVECTOR_FLAG | (PVEC_SUBR << PSEUDOVECTOR_AREA_BITS) },
+       { .a4 = android_watch_touch_motion_history },
+       4, 4, "android_watch_touch_motion_history", {0}, lisp_h_Qnil}};
+  DEFSYM (Qandroid_touch_motion_history, "android-touch-motion-history");
+  XSETSUBR (watcher, &Swatch_touch_motion_history.s);
+  Fadd_variable_watcher (Qandroid_touch_motion_history, watcher);
+#endif /* !ANDROID_STUBIFY */
+
   DEFVAR_BOOL ("x-use-underline-position-properties",
 	       x_use_underline_position_properties,
      doc: /* SKIP: real doc in xterm.c.  */);
@@ -272,6 +272,26 @@ struct android_output
 
   /* The number of characters of extracted text wanted by the IM.  */
   int extracted_text_hint;
+
+  /* The buffer from which the last snapshot of text sent to the input
+     method was taken, or NULL if no such snapshot is present.  Only
+     compared with the buffer of the selected window, as it might
+     since have been killed.  */
+  struct buffer *text_window_buffer;
+
+  /* The value of that buffer's BUF_CHARS_MODIFF at the time.  */
+  modiff_count text_window_modiff;
+
+  /* The selection and composing region reported with the last
+     snapshot.  */
+  ptrdiff_t text_window_point, text_window_mark;
+  ptrdiff_t text_window_start, text_window_end;
+
+  /* Whether the last snapshot was discarded because the text of its
+     buffer changed, and whether the input method has since asked
+     Emacs for text, which it does when no snapshot is available.  */
+  bool_bf text_window_stale : 1;
+  bool_bf text_window_requested : 1;
 };
 
 enum
@@ -67,6 +67,11 @@ static struct textconv_interface *text_interface;
 
 static int suppress_conversion_count;
 
+/* The counter of the text conversion action being processed, or of
+   the last such action to have been processed.  */
+
+unsigned long conversion_action_counter;
+
 /* Flags used to determine what must be sent after a batch edit
    ends.  */
 
@@ -1529,6 +1534,11 @@ handle_pending_conversion_events_1 (struct frame *f,
   token = action->counter;
   xfree (action);
 
+  /* Record this action's counter, so that window systems can identify
+     the edits reflected in any updates sent while it is
+     processed.  */
+  conversion_action_counter = max (conversion_action_counter, token);
+
   /* Text conversion events can still arrive immediately after
      `conversion_disabled_p' becomes true.  In that case, process all
      events, but don't perform any associated actions.  */